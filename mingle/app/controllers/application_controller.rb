@@ -95,6 +95,7 @@ class ApplicationController < ActionController::Base
   end
 
   include FeatureToggleFilter
+  around_filter :limit_query_time
   before_filter :set_secure_cookie
   before_filter :set_secure_headers
   before_filter :set_csp_header
@@ -208,6 +209,10 @@ class ApplicationController < ActionController::Base
     TransactionFilter.filter(self, &block)
   end
 
+  def limit_query_time(&block)
+    QueryTimeout.limit(QueryTimeout.request_seconds, &block)
+  end
+
   def set_rollback_only
     TransactionFilter.set_rollback_only
   end
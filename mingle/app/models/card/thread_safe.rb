@@ -208,6 +208,8 @@ class Card
       private
 
       def load_columns_from_db(table_name)
+        # another node may have changed the card table; don't trust this node's adapter schema cache
+        connection.clear_schema_cache! if connection.respond_to?(:clear_schema_cache!)
         columns = connection.columns(table_name, "#{table_name} Columns")
         columns.each do |column|
           column.primary = column.name == "id"
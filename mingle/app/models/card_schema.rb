@@ -251,6 +251,7 @@ class CardSchema
 
 
   def reset_column_information
+    connection.clear_schema_cache! if connection.respond_to?(:clear_schema_cache!)
     all_card_models.each(&:reset_column_information)
   end
 
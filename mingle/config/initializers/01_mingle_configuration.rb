@@ -56,6 +56,8 @@ ENV_CONFIG = [
     :cycle_time_server_url,
     :metrics_api_key,
     :request_timeout,
+    :query_timeout,
+    :background_job_query_timeout,
     :search_namespace,
     :search_index_name,
     :multitenant_messaging,
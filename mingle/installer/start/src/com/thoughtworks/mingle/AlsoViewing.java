@@ -23,57 +23,263 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Presence of users on Mingle pages. Pages are spread over a fixed number of shards, each an access
+ * ordered map capped at its share of {@code mingle.alsoViewing.maxUrls}, so the least recently visited
+ * pages are evicted first. A heartbeat only updates a timestamp in place; expired visitors and empty pages
+ * are removed by a sweeper once per expiry period, so a request only ever touches the page it asks about.
+ * Every change to the visitors of a page is stamped with a version and announced to listeners.
+ */
 public class AlsoViewing {
     public static final int DEFAULT_MARGIN = 4;
-    private Map<String, ConcurrentHashMap<String, Long>> visitors = new ConcurrentHashMap<String, ConcurrentHashMap<String, Long>>();
-    private Logger logger = LoggerFactory.getLogger(AlsoViewing.class);
-    private int timeoutInMilliseconds;
-    private int marginInMilliseconds;
+    public static final int DEFAULT_MAX_URLS = 10000;
+    private static final int SHARDS = 16;
+    private static final String EDIT_SUFFIX = "/edit";
+
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public interface Listener {
+        /** the set of visitors of the given page changed */
+        void changed(String page);
+
+        /** called by the sweeper before expired visitors are removed */
+        void sweeping();
+    }
+
+    /** visitors of pages on other Mingle nodes */
+    public interface RemoteVisitors {
+        Collection<String> visitorsOf(String page);
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static Logger logger = LoggerFactory.getLogger(AlsoViewing.class);
+    private final Shard[] shards;
+    private final int expiryInMilliseconds;
+    private final Clock clock;
+    private final AtomicLong versions = new AtomicLong();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private volatile RemoteVisitors remoteVisitors;
+    private ScheduledExecutorService sweeper;
 
     public AlsoViewing(int timeoutInSeconds, int marginInSeconds) {
-        this.timeoutInMilliseconds = timeoutInSeconds * 1000;
-        this.marginInMilliseconds = marginInSeconds * 1000;
+        this(timeoutInSeconds, marginInSeconds, DEFAULT_MAX_URLS, SYSTEM_CLOCK);
     }
 
-    public static AlsoViewing create() {
-        String intervalProperty = System.getProperty("mingle.alsoViewing.interval");
-        int interval = 5;
-        if (intervalProperty != null) {
-            interval = Integer.parseInt(intervalProperty);
+    public AlsoViewing(int timeoutInSeconds, int marginInSeconds, int maxUrls, Clock clock) {
+        this.expiryInMilliseconds = (timeoutInSeconds + marginInSeconds) * 1000;
+        this.clock = clock;
+        this.shards = new Shard[SHARDS];
+        int urlsPerShard = Math.max(1, maxUrls / SHARDS);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(urlsPerShard, versions);
         }
+    }
+
+    public static AlsoViewing create() {
+        AlsoViewing alsoViewing = new AlsoViewing(interval(), DEFAULT_MARGIN, intProperty("mingle.alsoViewing.maxUrls", DEFAULT_MAX_URLS), SYSTEM_CLOCK);
+        alsoViewing.startSweeper();
+        return alsoViewing;
+    }
 
-        return new AlsoViewing(interval, DEFAULT_MARGIN);
+    public static int interval() {
+        return intProperty("mingle.alsoViewing.interval", 5);
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring incorrect system property '" + key + "=" + value + "', defaulting to " + defaultValue);
+            return defaultValue;
+        }
     }
 
     public void add(String url, String currentUser) {
         if (invalidParams(url, currentUser)) return;
-        if (visitors.get(url) == null) {
-            visitors.put(url, new ConcurrentHashMap<String, Long>());
+        String key = normalize(url);
+        long now = clock.currentTimeMillis();
+        if (shardFor(key).visit(key, currentUser, now, now - expiryInMilliseconds)) {
+            fireChanged(key);
+        }
+    }
+
+    /**
+     * Keeps a visitor who is still there, e.g. waiting on a long poll, from expiring. Unlike {@link #add} this
+     * is not a change even when the last visit is older than the expiry, so nobody waiting on the page is woken.
+     */
+    public void touch(String url, String currentUser) {
+        if (invalidParams(url, currentUser)) return;
+        String key = normalize(url);
+        long now = clock.currentTimeMillis();
+        if (shardFor(key).touch(key, currentUser, now, now - expiryInMilliseconds)) {
+            fireChanged(key);
+        }
+    }
+
+    /**
+     * The latest version of the visitors a user of the given url gets to see, changes whenever
+     * {@link #extractActiveUsersFor(String, String)} could answer differently
+     */
+    public long version(String url) {
+        if (StringUtils.isBlank(url)) return 0;
+        long version = 0;
+        for (String page : pagesOf(url)) {
+            version = Math.max(version, shardFor(page).version(page));
+        }
+        return version;
+    }
+
+    /** the pages whose visitors are shown to a user of the given url */
+    public List<String> pagesOf(String url) {
+        String key = normalize(url);
+        String viewKey = StringUtils.removeEndIgnoreCase(key, EDIT_SUFFIX);
+        return Arrays.asList(viewKey, viewKey + EDIT_SUFFIX);
+    }
+
+    public void setRemoteVisitors(RemoteVisitors remoteVisitors) {
+        this.remoteVisitors = remoteVisitors;
+    }
+
+    /** visitors of other nodes changed on the given pages */
+    public void remoteChanged(Collection<String> pages) {
+        long now = clock.currentTimeMillis();
+        for (String page : pages) {
+            shardFor(page).changed(page, now);
+            fireChanged(page);
+        }
+    }
+
+    /** the active visitors of every page, for publishing to other nodes */
+    public Map<String, List<String>> activeVisitors() {
+        long expiredBefore = clock.currentTimeMillis() - expiryInMilliseconds;
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (Shard shard : shards) {
+            shard.collectAll(expiredBefore, result);
+        }
+        return result;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireChanged(String page) {
+        for (Listener listener : listeners) {
+            listener.changed(page);
         }
-        visitors.get(url).put(currentUser, new Date().getTime());
     }
 
     public HashMap<String, ArrayList<String>> extractActiveUsersFor(String url, String currentUser) {
-        long now = new Date().getTime();
+        long now = clock.currentTimeMillis();
         HashMap<String, ArrayList<String>> users = new HashMap<String, ArrayList<String>>();
         users.put("viewers", new ArrayList<String>());
         users.put("editors", new ArrayList<String>());
         if (invalidParams(url, currentUser)) return users;
-        ArrayList<String> viewers = extractActiveUsers(StringUtils.removeEndIgnoreCase(url, "/edit"), currentUser, now);
-        ArrayList<String> editors = null;
-        if (url.endsWith("/edit")) {
-            editors = extractActiveUsers(url, currentUser, now);
-        } else {
-            editors = extractActiveUsers(url + "/edit", currentUser, now);
-        }
+        List<String> pages = pagesOf(url);
+        ArrayList<String> viewers = extractActiveUsers(pages.get(0), currentUser, now);
+        ArrayList<String> editors = extractActiveUsers(pages.get(1), currentUser, now);
         viewers.removeAll(editors);
         users.put("viewers", viewers);
         users.put("editors", editors);
         return users;
     }
 
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AlsoViewingSweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, expiryInMilliseconds);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    logger.error("Could not sweep expired visitors", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    public void sweep() {
+        for (Listener listener : listeners) {
+            listener.sweeping();
+        }
+        long expiredBefore = clock.currentTimeMillis() - expiryInMilliseconds;
+        List<String> changed = new ArrayList<String>();
+        for (Shard shard : shards) {
+            shard.sweep(expiredBefore, changed);
+        }
+        for (String page : changed) {
+            fireChanged(page);
+        }
+        if (!changed.isEmpty()) {
+            logger.debug("Swept expired visitors of " + changed.size() + " pages");
+        }
+    }
+
+    static String normalize(String url) {
+        String result = url.trim();
+        int end = result.length();
+        for (int i = 0; i < end; i++) {
+            char c = result.charAt(i);
+            if (c == '?' || c == '#' || c == ';') {
+                end = i;
+                break;
+            }
+        }
+        while (end > 1 && result.charAt(end - 1) == '/') {
+            end--;
+        }
+        return end == result.length() ? result : result.substring(0, end);
+    }
+
     private boolean invalidParams(String url, String currentUser) {
         if(StringUtils.isBlank(url) || StringUtils.isBlank(currentUser)){
             logger.debug("Should not give blank url or currentUser!");
@@ -81,20 +287,156 @@ public class AlsoViewing {
         }
         return false;
     }
-    
-    private ArrayList<String> extractActiveUsers(String url, String currentUser, long now) {
+
+    private ArrayList<String> extractActiveUsers(String key, String currentUser, long now) {
         ArrayList<String> users = new ArrayList<String>();
-        if (visitors.containsKey(url)) {
-            Set<Map.Entry<String, Long>> visitorsOfUrl = visitors.get(url).entrySet();
-            for (Map.Entry<String, Long> visitor : visitorsOfUrl) {
-                if (visitor.getKey().equalsIgnoreCase(currentUser)) continue;
-                if (now - visitor.getValue() < timeoutInMilliseconds + marginInMilliseconds) {
-                    users.add(visitor.getKey());
-                } else {
-                    visitorsOfUrl.remove(visitor);
+        shardFor(key).collect(key, currentUser, now - expiryInMilliseconds, users);
+        RemoteVisitors remote = remoteVisitors;
+        if (remote != null) {
+            for (String visitor : remote.visitorsOf(key)) {
+                if (!visitor.equalsIgnoreCase(currentUser) && !users.contains(visitor)) {
+                    users.add(visitor);
                 }
             }
         }
         return users;
     }
+
+    private Shard shardFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[(hash & 0x7fffffff) % shards.length];
+    }
+
+    private static final class Visit {
+        long at;
+
+        Visit(long at) {
+            this.at = at;
+        }
+    }
+
+    private static final class Page {
+        final HashMap<String, Visit> visitors = new HashMap<String, Visit>(4);
+        long lastVisitAt;
+        long version;
+    }
+
+    private static final class Shard {
+        private final LinkedHashMap<String, Page> pages;
+        private final AtomicLong versions;
+
+        Shard(final int maxPages, AtomicLong versions) {
+            this.versions = versions;
+            pages = new LinkedHashMap<String, Page>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+                    return size() > maxPages;
+                }
+            };
+        }
+
+        synchronized boolean visit(String key, String user, long now, long expiredBefore) {
+            Page page = pages.get(key);
+            if (page == null) {
+                page = new Page();
+                pages.put(key, page);
+            }
+            page.lastVisitAt = now;
+            Visit visit = page.visitors.get(user);
+            if (visit == null) {
+                page.visitors.put(user, new Visit(now));
+            } else {
+                boolean returning = visit.at <= expiredBefore;
+                visit.at = now;
+                if (!returning) {
+                    return false;
+                }
+            }
+            page.version = versions.incrementAndGet();
+            return true;
+        }
+
+        /** true when the visitor was gone and had to be added again */
+        synchronized boolean touch(String key, String user, long now, long expiredBefore) {
+            Page page = pages.get(key);
+            Visit visit = page == null ? null : page.visitors.get(user);
+            if (visit == null) {
+                return visit(key, user, now, expiredBefore);
+            }
+            page.lastVisitAt = now;
+            visit.at = now;
+            return false;
+        }
+
+        /** stamped like a visit, otherwise the next sweep drops the page and its version with it */
+        synchronized void changed(String key, long now) {
+            Page page = pages.get(key);
+            if (page == null) {
+                page = new Page();
+                pages.put(key, page);
+            }
+            page.lastVisitAt = now;
+            page.version = versions.incrementAndGet();
+        }
+
+        synchronized void collectAll(long expiredBefore, Map<String, List<String>> result) {
+            for (Map.Entry<String, Page> entry : pages.entrySet()) {
+                List<String> users = null;
+                for (Map.Entry<String, Visit> visitor : entry.getValue().visitors.entrySet()) {
+                    if (visitor.getValue().at <= expiredBefore) continue;
+                    if (users == null) {
+                        users = new ArrayList<String>(entry.getValue().visitors.size());
+                        result.put(entry.getKey(), users);
+                    }
+                    users.add(visitor.getKey());
+                }
+            }
+        }
+
+        synchronized long version(String key) {
+            Page page = pages.get(key);
+            return page == null ? 0 : page.version;
+        }
+
+        synchronized void collect(String key, String currentUser, long expiredBefore, List<String> users) {
+            Page page = pages.get(key);
+            if (page == null) {
+                return;
+            }
+            for (Map.Entry<String, Visit> visitor : page.visitors.entrySet()) {
+                if (visitor.getValue().at <= expiredBefore || visitor.getKey().equalsIgnoreCase(currentUser)) continue;
+                users.add(visitor.getKey());
+            }
+        }
+
+        synchronized void sweep(long expiredBefore, List<String> changed) {
+            for (Iterator<Map.Entry<String, Page>> pageIterator = pages.entrySet().iterator(); pageIterator.hasNext(); ) {
+                Map.Entry<String, Page> entry = pageIterator.next();
+                Page page = entry.getValue();
+                if (page.lastVisitAt <= expiredBefore) {
+                    pageIterator.remove();
+                    if (!page.visitors.isEmpty()) {
+                        changed.add(entry.getKey());
+                    }
+                    continue;
+                }
+                boolean removed = false;
+                for (Iterator<Visit> visits = page.visitors.values().iterator(); visits.hasNext(); ) {
+                    if (visits.next().at <= expiredBefore) {
+                        visits.remove();
+                        removed = true;
+                    }
+                }
+                if (removed) {
+                    page.version = versions.incrementAndGet();
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+
+        synchronized int size() {
+            return pages.size();
+        }
+    }
 }
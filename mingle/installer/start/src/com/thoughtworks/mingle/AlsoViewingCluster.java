@@ -0,0 +1,276 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.thoughtworks.mingle.services.Memcached;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
+import net.spy.memcached.MemcachedClient;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares "also viewing" presence between Mingle nodes through memcached. Once per interval each node writes
+ * the active visitors of all its pages as a single item and reads the items of all other nodes with one bulk
+ * get. Pages that would push the item over what memcached stores are left out of it. Requests are answered from the copy fetched last, which is dropped when it could not be refreshed for
+ * longer than a node item lives, so a request never waits on memcached.
+ */
+public class AlsoViewingCluster implements AlsoViewing.RemoteVisitors {
+    public static final String ENABLED_KEY = "mingle.alsoViewing.cluster";
+
+    private static final Type SNAPSHOT_TYPE = new TypeToken<Map<String, List<String>>>() {}.getType();
+    private static final int MAX_REGISTRATION_ATTEMPTS = 5;
+    // memcached refuses items over 1MB, key and item header included
+    static final int MAX_SNAPSHOT_BYTES = 1000 * 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(AlsoViewingCluster.class);
+    private final Gson gson = new Gson();
+    private final MemcachedClient client;
+    private final AlsoViewing alsoViewing;
+    private final AlsoViewing.Clock clock;
+    private final String nodeId;
+    private final String nodesKey;
+    private final String nodeKeyPrefix;
+    private final int intervalInSeconds;
+    private final int expiryInSeconds;
+
+    private volatile Map<String, Set<String>> remote = Collections.emptyMap();
+    private volatile long remoteFetchedAt;
+    private List<String> otherNodes = Collections.emptyList();
+    private String lastPublished;
+    private long lastPublishedAt;
+    private boolean truncated;
+    private ScheduledExecutorService scheduler;
+
+    public AlsoViewingCluster(MemcachedClient client, AlsoViewing alsoViewing, AlsoViewing.Clock clock, String namespace, String nodeId, int intervalInSeconds) {
+        this.client = client;
+        this.alsoViewing = alsoViewing;
+        this.clock = clock;
+        this.nodeId = nodeId;
+        this.intervalInSeconds = Math.max(1, intervalInSeconds);
+        this.expiryInSeconds = 2 * this.intervalInSeconds + AlsoViewing.DEFAULT_MARGIN;
+        String prefix = StringUtils.isBlank(namespace) ? "also_viewing" : namespace + "/also_viewing";
+        this.nodesKey = prefix + "/nodes";
+        this.nodeKeyPrefix = prefix + "/node/";
+    }
+
+    /** @return the started cluster, or null when {@code mingle.alsoViewing.cluster} is not turned on */
+    public static AlsoViewingCluster start(AlsoViewing alsoViewing) {
+        if (!"true".equalsIgnoreCase(System.getProperty(ENABLED_KEY))) {
+            return null;
+        }
+        try {
+            AlsoViewingCluster cluster = new AlsoViewingCluster(Memcached.client(), alsoViewing, AlsoViewing.SYSTEM_CLOCK,
+                    System.getProperty("mingle.appNamespace"), ManagementFactory.getRuntimeMXBean().getName(), AlsoViewing.interval());
+            alsoViewing.setRemoteVisitors(cluster);
+            cluster.schedule();
+            return cluster;
+        } catch (IOException e) {
+            LoggerFactory.getLogger(AlsoViewingCluster.class).error("Could not connect to memcached, also viewing stays local to this node", e);
+            return null;
+        }
+    }
+
+    private void schedule() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AlsoViewingCluster");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    logger.warn("Could not share also viewing presence with other nodes: " + e.getMessage());
+                }
+            }
+        }, 0, intervalInSeconds, TimeUnit.SECONDS);
+        logger.info("Sharing also viewing presence as node " + nodeId);
+    }
+
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        client.delete(nodeKey(nodeId));
+    }
+
+    @Override
+    public Collection<String> visitorsOf(String page) {
+        if (clock.currentTimeMillis() - remoteFetchedAt > TimeUnit.SECONDS.toMillis(expiryInSeconds)) {
+            return Collections.emptySet();
+        }
+        Set<String> visitors = remote.get(page);
+        return visitors == null ? Collections.<String>emptySet() : visitors;
+    }
+
+    void refresh() {
+        publish();
+
+        List<String> keys = new ArrayList<String>(otherNodes.size() + 1);
+        keys.add(nodesKey);
+        for (String node : otherNodes) {
+            keys.add(nodeKey(node));
+        }
+        Map<String, Object> values = client.getBulk(keys);
+
+        Map<String, Set<String>> fetched = new HashMap<String, Set<String>>();
+        for (String node : otherNodes) {
+            Object snapshot = values.get(nodeKey(node));
+            if (snapshot == null) {
+                continue;
+            }
+            Map<String, List<String>> pages = gson.fromJson((String) snapshot, SNAPSHOT_TYPE);
+            for (Map.Entry<String, List<String>> page : pages.entrySet()) {
+                Set<String> visitors = fetched.get(page.getKey());
+                if (visitors == null) {
+                    visitors = new HashSet<String>();
+                    fetched.put(page.getKey(), visitors);
+                }
+                visitors.addAll(page.getValue());
+            }
+        }
+
+        Set<String> changed = new HashSet<String>();
+        Map<String, Set<String>> previous = remote;
+        for (Map.Entry<String, Set<String>> page : fetched.entrySet()) {
+            if (!page.getValue().equals(previous.get(page.getKey()))) {
+                changed.add(page.getKey());
+            }
+        }
+        for (String page : previous.keySet()) {
+            if (!fetched.containsKey(page)) {
+                changed.add(page);
+            }
+        }
+        remote = fetched;
+        remoteFetchedAt = clock.currentTimeMillis();
+        if (!changed.isEmpty()) {
+            alsoViewing.remoteChanged(changed);
+        }
+
+        updateMembership((String) values.get(nodesKey), values);
+    }
+
+    private void publish() {
+        String snapshot = snapshot();
+        long now = clock.currentTimeMillis();
+        // an unchanged snapshot only needs to be written again before it expires
+        if (snapshot.equals(lastPublished) && now - lastPublishedAt < TimeUnit.SECONDS.toMillis(expiryInSeconds) / 2) {
+            return;
+        }
+        client.set(nodeKey(nodeId), expiryInSeconds, snapshot);
+        lastPublished = snapshot;
+        lastPublishedAt = now;
+    }
+
+    private String snapshot() {
+        StringBuilder json = new StringBuilder("{");
+        int bytes = 2;
+        int dropped = 0;
+        for (Map.Entry<String, List<String>> page : alsoViewing.activeVisitors().entrySet()) {
+            String entry = gson.toJson(page.getKey()) + ":" + gson.toJson(page.getValue());
+            int entryBytes = entry.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (bytes + entryBytes > MAX_SNAPSHOT_BYTES) {
+                dropped++;
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(entry);
+            bytes += entryBytes;
+        }
+        if (dropped > 0 && !truncated) {
+            logger.warn("Visitors of " + dropped + " pages are not shared with other nodes, they do not fit into one memcached item");
+        }
+        truncated = dropped > 0;
+        return json.append('}').toString();
+    }
+
+    private void updateMembership(String nodes, Map<String, Object> values) {
+        List<String> members = parseNodes(nodes);
+        List<String> others = new ArrayList<String>(members.size());
+        boolean gone = false;
+        for (String node : members) {
+            if (node.equals(nodeId)) {
+                continue;
+            }
+            if (otherNodes.contains(node) && !values.containsKey(nodeKey(node))) {
+                gone = true;
+                continue;
+            }
+            others.add(node);
+        }
+        otherNodes = others;
+        if (gone || !members.contains(nodeId)) {
+            register();
+        }
+    }
+
+    private void register() {
+        for (int attempt = 0; attempt < MAX_REGISTRATION_ATTEMPTS; attempt++) {
+            CASValue<Object> current = client.gets(nodesKey);
+            if (current == null) {
+                if (client.add(nodesKey, 0, nodeId).getStatus().isSuccess()) {
+                    return;
+                }
+                continue;
+            }
+            List<String> members = new ArrayList<String>();
+            for (String node : parseNodes((String) current.getValue())) {
+                if (otherNodes.contains(node)) {
+                    members.add(node);
+                }
+            }
+            members.add(nodeId);
+            if (client.cas(nodesKey, current.getCas(), StringUtils.join(members, ",")) == CASResponse.OK) {
+                return;
+            }
+        }
+        logger.debug("Could not register node " + nodeId + ", will try again next interval");
+    }
+
+    private List<String> parseNodes(String nodes) {
+        if (StringUtils.isBlank(nodes)) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(nodes.split(","));
+    }
+
+    private String nodeKey(String node) {
+        return nodeKeyPrefix + node.replaceAll("\\s", "_");
+    }
+}
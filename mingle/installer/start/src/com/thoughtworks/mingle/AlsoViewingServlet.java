@@ -21,33 +21,211 @@ import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URLDecoder;
-import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Answers the "also viewing" poll of every open page. A client that posts {@code wait=true} together with
+ * the {@code version} it last received is held (long poll) until the viewers or editors of its page change
+ * or {@code mingle.alsoViewing.longPollTimeout} seconds pass. When the container cannot suspend the request
+ * the answer is sent right away without a version, and the client keeps polling every interval as before.
+ */
 public class AlsoViewingServlet extends HttpServlet {
+    public static final String PATH = "/also_viewing";
+    public static final int DEFAULT_LONG_POLL_TIMEOUT = 30;
+
+    private static final Gson GSON = new Gson();
+
     private Logger logger = LoggerFactory.getLogger(AlsoViewingServlet.class);
     private AlsoViewing alsoViewing = AlsoViewing.create();
     private static String ENCODING = "UTF-8";
 
+    private final ConcurrentHashMap<String, Set<Waiter>> waiters = new ConcurrentHashMap<String, Set<Waiter>>();
+    private final Set<Waiter> allWaiters = ConcurrentHashMap.newKeySet();
+    private long longPollTimeoutInMilliseconds;
+    private AlsoViewingCluster cluster;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        longPollTimeoutInMilliseconds = TimeUnit.SECONDS.toMillis(Long.getLong("mingle.alsoViewing.longPollTimeout", DEFAULT_LONG_POLL_TIMEOUT));
+        cluster = AlsoViewingCluster.start(alsoViewing);
+        alsoViewing.addListener(new AlsoViewing.Listener() {
+            @Override
+            public void changed(String page) {
+                Set<Waiter> waiting = waiters.get(page);
+                if (waiting != null) {
+                    for (Waiter waiter : waiting) {
+                        waiter.resume();
+                    }
+                }
+            }
+
+            @Override
+            public void sweeping() {
+                for (Waiter waiter : allWaiters) {
+                    alsoViewing.touch(waiter.url, waiter.currentUser);
+                }
+            }
+        });
+    }
+
+    public static boolean isAlsoViewingRequest(String servletPath) {
+        return PATH.equals(servletPath);
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String url = URLDecoder.decode(request.getParameter("url"), ENCODING);
         String currentUser = URLDecoder.decode(request.getParameter("currentUser"), ENCODING);
-        logger.debug(String.format("Processing for (%s at %s)", request.getRemoteAddr(), new Date()));
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Processing for (%s at %s)", request.getRemoteAddr(), new Date()));
+        }
         alsoViewing.add(url, currentUser);
-        sendResponse(response, new Gson().toJson(alsoViewing.extractActiveUsersFor(url, currentUser)));
+
+        if (!"true".equals(request.getParameter("wait")) || !request.isAsyncSupported()) {
+            sendResponse(response, GSON.toJson(alsoViewing.extractActiveUsersFor(url, currentUser)));
+            return;
+        }
+
+        if (!String.valueOf(alsoViewing.version(url)).equals(request.getParameter("version"))) {
+            sendResponse(response, versionedUsers(url, currentUser));
+            return;
+        }
+
+        Waiter waiter = new Waiter(request.startAsync(), url, currentUser);
+        waiter.suspend(request.getParameter("version"));
+    }
+
+    @Override
+    public void destroy() {
+        if (cluster != null) {
+            cluster.shutdown();
+        }
+        alsoViewing.shutdown();
+        for (Waiter waiter : allWaiters) {
+            waiter.resume();
+        }
+    }
+
+    private String versionedUsers(String url, String currentUser) {
+        long version = alsoViewing.version(url);
+        Map<String, Object> result = new HashMap<String, Object>(alsoViewing.extractActiveUsersFor(url, currentUser));
+        result.put("version", String.valueOf(version));
+        return GSON.toJson(result);
     }
 
     private void sendResponse(HttpServletResponse response, String json) throws IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding(ENCODING);
-        response.getWriter().write(json);
         response.setContentLength(json.getBytes(ENCODING).length);
+        response.getWriter().write(json);
+    }
+
+    private class Waiter implements AsyncListener {
+        private final AsyncContext context;
+        private final String url;
+        private final String currentUser;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Waiter(AsyncContext context, String url, String currentUser) {
+            this.context = context;
+            this.url = url;
+            this.currentUser = currentUser;
+        }
+
+        void suspend(String seenVersion) {
+            context.setTimeout(longPollTimeoutInMilliseconds);
+            context.addListener(this);
+            allWaiters.add(this);
+            for (String page : alsoViewing.pagesOf(url)) {
+                waiters.compute(page, (key, waiting) -> {
+                    Set<Waiter> result = waiting == null ? ConcurrentHashMap.<Waiter>newKeySet() : waiting;
+                    result.add(this);
+                    return result;
+                });
+            }
+            // the page may have changed before this waiter was registered
+            if (!String.valueOf(alsoViewing.version(url)).equals(seenVersion)) {
+                resume();
+            }
+        }
+
+        void resume() {
+            if (done.get()) {
+                return;
+            }
+            try {
+                context.start(new Runnable() {
+                    @Override
+                    public void run() {
+                        respond();
+                    }
+                });
+            } catch (IllegalStateException e) {
+                logger.debug("Also viewing poll was already closed", e);
+            }
+        }
+
+        private void respond() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            forget();
+            try {
+                sendResponse((HttpServletResponse) context.getResponse(), versionedUsers(url, currentUser));
+            } catch (IOException e) {
+                logger.debug("Could not answer also viewing poll", e);
+            } catch (IllegalStateException e) {
+                logger.debug("Also viewing poll was already closed", e);
+            } finally {
+                context.complete();
+            }
+        }
+
+        private void forget() {
+            allWaiters.remove(this);
+            for (String page : alsoViewing.pagesOf(url)) {
+                waiters.computeIfPresent(page, (key, waiting) -> {
+                    waiting.remove(this);
+                    return waiting.isEmpty() ? null : waiting;
+                });
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            respond();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            done.set(true);
+            forget();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            done.set(true);
+            forget();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
     }
 }
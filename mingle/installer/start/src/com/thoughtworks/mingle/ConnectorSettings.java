@@ -0,0 +1,173 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.thoughtworks.mingle.MingleProperties.*;
+
+/**
+ * The settings of the HTTP connector and its executor, read from the mingle.connector.* properties and checked
+ * before Tomcat is configured with them. Settings which are left out keep the Tomcat defaults.
+ */
+public class ConnectorSettings {
+    public static final String DEFAULT_COMPRESSABLE_MIME_TYPE =
+            "text/html,text/plain,text/xml,text/css,text/javascript,application/xhtml+xml,application/x-javascript,application/javascript,image/svg+xml";
+
+    /** of the Tomcat executor */
+    public static final int DEFAULT_MAX_THREADS = 200;
+
+    private static final Map<String, String> PROTOCOLS = new LinkedHashMap<String, String>();
+
+    static {
+        PROTOCOLS.put("nio", "org.apache.coyote.http11.Http11NioProtocol");
+        PROTOCOLS.put("nio2", "org.apache.coyote.http11.Http11Nio2Protocol");
+        PROTOCOLS.put("bio", "org.apache.coyote.http11.Http11Protocol");
+    }
+
+    public final String protocol;
+    public final boolean http2;
+    public final Integer maxThreads;
+    public final Integer minSpareThreads;
+    public final Integer maxQueueSize;
+    public final Integer maxConnections;
+    public final Integer acceptCount;
+    public final Integer connectionTimeout;
+    public final Integer keepAliveTimeout;
+    public final Integer maxKeepAliveRequests;
+    public final String compression;
+    public final Integer compressionMinSize;
+    public final String compressableMimeType;
+
+    /**
+     * @param legacyConnectorType value of the TCCON environment variable, which chose the connector before
+     *                            mingle.connector.protocol existed
+     */
+    public ConnectorSettings(Properties properties, String legacyConnectorType) throws ValidationException {
+        String protocolName = properties.getProperty(CONNECTOR_PROTOCOL_KEY);
+        if (StringUtils.isBlank(protocolName)) {
+            protocolName = "bio".equalsIgnoreCase(legacyConnectorType) ? "bio" : "nio";
+        }
+        protocol = protocolName.trim().toLowerCase();
+        if (!PROTOCOLS.containsKey(protocol)) {
+            throw new ValidationException(CONNECTOR_PROTOCOL_KEY + " must be one of " + StringUtils.join(PROTOCOLS.keySet(), ", ") + ", not " + protocolName);
+        }
+
+        http2 = bool(properties, CONNECTOR_HTTP2_KEY);
+        if (http2 && "bio".equals(protocol)) {
+            throw new ValidationException(CONNECTOR_HTTP2_KEY + " needs the nio or nio2 protocol");
+        }
+
+        maxThreads = integer(properties, CONNECTOR_MAX_THREADS_KEY, 1);
+        minSpareThreads = integer(properties, CONNECTOR_MIN_SPARE_THREADS_KEY, 0);
+        int threads = maxThreads == null ? DEFAULT_MAX_THREADS : maxThreads;
+        if (minSpareThreads != null && minSpareThreads > threads) {
+            throw new ValidationException(CONNECTOR_MIN_SPARE_THREADS_KEY + " cannot be more than " + CONNECTOR_MAX_THREADS_KEY + " (" + threads + ")");
+        }
+        maxQueueSize = integer(properties, CONNECTOR_MAX_QUEUE_SIZE_KEY, 1);
+        maxConnections = unlimitedOrInteger(properties, CONNECTOR_MAX_CONNECTIONS_KEY);
+        acceptCount = integer(properties, CONNECTOR_ACCEPT_COUNT_KEY, 1);
+        connectionTimeout = unlimitedOrInteger(properties, CONNECTOR_CONNECTION_TIMEOUT_KEY);
+        keepAliveTimeout = unlimitedOrInteger(properties, CONNECTOR_KEEP_ALIVE_TIMEOUT_KEY);
+        maxKeepAliveRequests = unlimitedOrInteger(properties, CONNECTOR_MAX_KEEP_ALIVE_REQUESTS_KEY);
+
+        String compressionSetting = properties.getProperty(CONNECTOR_COMPRESSION_KEY, "on").trim().toLowerCase();
+        if (!compressionSetting.matches("on|off|force")) {
+            throw new ValidationException(CONNECTOR_COMPRESSION_KEY + " must be one of on, off, force, not " + compressionSetting);
+        }
+        compression = compressionSetting;
+        compressionMinSize = integer(properties, CONNECTOR_COMPRESSION_MIN_SIZE_KEY, 0);
+        String mimeTypes = properties.getProperty(CONNECTOR_COMPRESSABLE_MIME_TYPE_KEY);
+        compressableMimeType = StringUtils.isBlank(mimeTypes) ? DEFAULT_COMPRESSABLE_MIME_TYPE : mimeTypes.replaceAll("\\s", "");
+    }
+
+    public String protocolClassName() {
+        return PROTOCOLS.get(protocol);
+    }
+
+    private static boolean bool(Properties properties, String key) throws ValidationException {
+        String value = properties.getProperty(key);
+        if (StringUtils.isBlank(value) || "false".equalsIgnoreCase(value.trim())) {
+            return false;
+        }
+        if ("true".equalsIgnoreCase(value.trim())) {
+            return true;
+        }
+        throw new ValidationException(key + " must be true or false, not " + value);
+    }
+
+    private static Integer integer(Properties properties, String key, int min) throws ValidationException {
+        String value = properties.getProperty(key);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= min) {
+                return result;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        throw new ValidationException(key + " must be a number of at least " + min + ", not " + value);
+    }
+
+    /** -1 means no limit in Tomcat */
+    private static Integer unlimitedOrInteger(Properties properties, String key) throws ValidationException {
+        String value = properties.getProperty(key);
+        if (value != null && value.trim().equals("-1")) {
+            return -1;
+        }
+        try {
+            return integer(properties, key, 1);
+        } catch (ValidationException e) {
+            throw new ValidationException(key + " must be -1 (no limit) or a number of at least 1, not " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("protocol=").append(protocol).append(", http2=").append(http2);
+        append(result, "maxThreads", maxThreads);
+        append(result, "minSpareThreads", minSpareThreads);
+        append(result, "maxQueueSize", maxQueueSize);
+        append(result, "maxConnections", maxConnections);
+        append(result, "acceptCount", acceptCount);
+        append(result, "connectionTimeout", connectionTimeout);
+        append(result, "keepAliveTimeout", keepAliveTimeout);
+        append(result, "maxKeepAliveRequests", maxKeepAliveRequests);
+        result.append(", compression=").append(compression);
+        append(result, "compressionMinSize", compressionMinSize);
+        return result.toString();
+    }
+
+    private static void append(StringBuilder result, String name, Integer value) {
+        result.append(", ").append(name).append("=").append(value == null ? "default" : value.toString());
+    }
+
+    public static class ValidationException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ValidationException(String message) {
+            super(message);
+        }
+    }
+}
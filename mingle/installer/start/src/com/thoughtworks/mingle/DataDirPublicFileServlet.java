@@ -18,7 +18,6 @@
 package com.thoughtworks.mingle;
 
 import org.apache.catalina.util.RequestUtil;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 
 import javax.servlet.ServletException;
@@ -31,8 +30,13 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+/**
+ * Serves attachments and icons from the public directory of the data dir, with ranges and conditional
+ * requests; see FileSender.
+ */
 public class DataDirPublicFileServlet extends HttpServlet {
     private static Pattern dataDirRegex = Pattern.compile("(/attachments(?:_(?:\\d+))?/|/project/|/user/).*");
+    private final FileSender sender = new FileSender();
     private File publicDir;
     private String cacheControl;
 
@@ -52,14 +56,27 @@ public class DataDirPublicFileServlet extends HttpServlet {
         if (!StringUtils.isBlank(cacheControl)) {
             response.setHeader("Cache-Control", cacheControl);
         }
-        serveResource(request, response);
+        serveResource(request, response, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!StringUtils.isBlank(cacheControl)) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        serveResource(request, response, false);
     }
 
     public void serveResource(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serveResource(request, response, true);
+    }
+
+    private void serveResource(HttpServletRequest request, HttpServletResponse response, boolean includeBody) throws IOException {
         String requestedPath = request.getRequestURI().replace(request.getContextPath(), "");
 
         File f = new File(this.publicDir.getAbsoluteFile(), requestedPath);
-        if (f.exists() && f.isFile() && FileUtils.directoryContains(this.publicDir, f)) {
+        FileSender.Metadata file = sender.metadata(this.publicDir, f);
+        if (file != null) {
 
             Map<String, String[]> params = new HashMap<String, String[]>();
             RequestUtil.parseParameters(params, request.getQueryString(), "UTF-8");
@@ -68,12 +85,16 @@ public class DataDirPublicFileServlet extends HttpServlet {
                 response.setHeader("Content-Disposition", "attachment; filename=\"" + f.getName() + "\"");
             }
 
-            FileUtils.copyFile(f, response.getOutputStream());
+            sender.send(request, response, file, mimeType(f.getName()), includeBody);
         } else {
             response.setStatus(404);
         }
     }
 
+    private String mimeType(String fileName) {
+        return getServletConfig() == null ? null : getServletContext().getMimeType(fileName);
+    }
+
     public static boolean isDataDirPublicFileRequest(String requestURI) {
         return dataDirRegex.matcher(requestURI).matches();
     }
@@ -0,0 +1,300 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.apache.catalina.Globals;
+import org.apache.commons.io.FileUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends files with their length, ETag and Last-Modified, answering conditional requests with 304 and
+ * range requests with 206. Bodies are handed to Tomcat sendfile when the connector supports it, which
+ * frees the request thread while the file is written; otherwise they are transferred from a FileChannel
+ * without going through heap buffers of our own.
+ *
+ * The metadata of recently sent files is cached for a couple of seconds, so a file requested over and over
+ * is not resolved and stat'ed each time.
+ */
+public class FileSender {
+    /** below this Tomcat's own buffers are cheaper than handing the file to the poller */
+    static final long SENDFILE_MIN_SIZE = 48 * 1024;
+    /** requests asking for more ranges than this get the whole file */
+    static final int MAX_RANGES = 16;
+    static final long METADATA_TTL_MILLIS = 2000;
+    static final int METADATA_CACHE_SIZE = 10000;
+
+    private static final List<long[]> UNSATISFIABLE = Collections.emptyList();
+
+    private final Map<File, Metadata> metadata = new LinkedHashMap<File, Metadata>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Metadata> eldest) {
+            return size() > METADATA_CACHE_SIZE;
+        }
+    };
+
+    public static class Metadata {
+        public final File file;
+        public final long length;
+        public final long lastModified;
+        public final String etag;
+        final long checkedAt = System.currentTimeMillis();
+
+        Metadata(File canonicalFile) {
+            this.file = canonicalFile;
+            this.length = canonicalFile.length();
+            this.lastModified = canonicalFile.lastModified();
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        }
+    }
+
+    /**
+     * The metadata of file, or null when it is not a file inside root.
+     */
+    public Metadata metadata(File root, File file) throws IOException {
+        synchronized (metadata) {
+            Metadata cached = metadata.get(file);
+            if (cached != null && System.currentTimeMillis() - cached.checkedAt < METADATA_TTL_MILLIS) {
+                return cached;
+            }
+        }
+
+        File canonical = file.getCanonicalFile();
+        if (!canonical.isFile() || !FileUtils.directoryContains(root, canonical)) {
+            synchronized (metadata) {
+                metadata.remove(file);
+            }
+            return null;
+        }
+
+        Metadata fresh = new Metadata(canonical);
+        synchronized (metadata) {
+            metadata.put(file, fresh);
+        }
+        return fresh;
+    }
+
+    public void send(HttpServletRequest request, HttpServletResponse response, Metadata file, String contentType,
+                     boolean includeBody) throws IOException {
+        response.setHeader("ETag", file.etag);
+        response.setDateHeader("Last-Modified", file.lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (notModified(request, file)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<long[]> ranges = ranges(request, file);
+        if (ranges == UNSATISFIABLE) {
+            response.setHeader("Content-Range", "bytes */" + file.length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        if (ranges == null) {
+            if (contentType != null) response.setContentType(contentType);
+            response.setContentLengthLong(file.length);
+            if (includeBody) body(request, response, file, 0, file.length);
+        } else if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            if (contentType != null) response.setContentType(contentType);
+            response.setHeader("Content-Range", contentRange(range, file.length));
+            response.setContentLengthLong(range[1] - range[0] + 1);
+            if (includeBody) body(request, response, file, range[0], range[1] + 1);
+        } else {
+            sendMultipart(response, file, contentType, ranges, includeBody);
+        }
+    }
+
+    private void sendMultipart(HttpServletResponse response, Metadata file, String contentType,
+                               List<long[]> ranges, boolean includeBody) throws IOException {
+        String boundary = "MINGLE_BYTERANGES_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+        long length = 0;
+        for (long[] range : ranges) {
+            StringBuilder header = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+            if (contentType != null) header.append("Content-Type: ").append(contentType).append("\r\n");
+            header.append("Content-Range: ").append(contentRange(range, file.length)).append("\r\n\r\n");
+            byte[] bytes = header.toString().getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(bytes);
+            length += bytes.length + range[1] - range[0] + 1;
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        length += end.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(length);
+        if (!includeBody) return;
+
+        ServletOutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file.file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                transfer(channel, ranges.get(i)[0], ranges.get(i)[1] + 1, out);
+            }
+        }
+        out.write(end);
+    }
+
+    private void body(HttpServletRequest request, HttpServletResponse response, Metadata file, long start, long end)
+            throws IOException {
+        if (sendsFile(request, end - start)) {
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.file.getPath());
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, start);
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.file.toPath(), StandardOpenOption.READ)) {
+            transfer(channel, start, end, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Whether a body of this length is handed to Tomcat sendfile; the connector neither buffers nor compresses
+     * those.
+     */
+    public static boolean sendsFile(HttpServletRequest request, long length) {
+        return length >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR));
+    }
+
+    private static void transfer(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        for (long position = start; position < end; ) {
+            long sent = channel.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new IOException("file was truncated while it was sent");
+            }
+            position += sent;
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    static boolean notModified(HttpServletRequest request, Metadata file) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, file.etag, true);
+        }
+
+        long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+        return ifModifiedSince != -1 && file.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /** whether the comma separated entity tags include etag, ignoring W/ prefixes when weak */
+    static boolean matches(String etags, String etag, boolean weak) {
+        for (String candidate : etags.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (weak && candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The inclusive [first, last] byte ranges requested; null for the whole file (no usable Range header,
+     * or an If-Range which no longer matches) and UNSATISFIABLE when none of the ranges is in the file.
+     */
+    static List<long[]> ranges(HttpServletRequest request, Metadata file) {
+        String header = request.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=") || file.length == 0) {
+            return null;
+        }
+
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.trim().equals(file.etag)) return null;
+            } else if (dateHeader(request, "If-Range") / 1000 != file.lastModified / 1000) {
+                return null;
+            }
+        }
+
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>(specs.length);
+        long total = 0;
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+
+            long first, last;
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) continue;
+                    first = Math.max(0, file.length - suffix);
+                    last = file.length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (last < first) return null;
+                    if (first >= file.length) continue;
+                    last = Math.min(last, file.length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges.add(new long[]{first, last});
+            total += last - first + 1;
+        }
+
+        if (ranges.isEmpty()) return UNSATISFIABLE;
+        // overlapping ranges would send more than the file; the whole of it is cheaper then
+        return total > file.length ? null : ranges;
+    }
+}
@@ -37,10 +37,12 @@ public class HttpRedirectFilter implements Filter {
 
     private boolean isRedirectHttpRequest;
     private RailsPathHelper helper;
+    private PublicFileIndex publicFiles;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         helper = new RailsPathHelper(filterConfig.getServletContext());
+        publicFiles = PublicFileIndex.of(helper);
         String config = System.getProperty("mingle.redirectHttpRequest");
         isRedirectHttpRequest = "true".equalsIgnoreCase(config);
         if (config != null) {
@@ -83,6 +85,9 @@ public class HttpRedirectFilter implements Filter {
         if (path == null) {
             return false;
         }
+        if (publicFiles != null) {
+            return publicFiles.isFile(path);
+        }
         File file = new File(helper.publicRealPath(path));
         return file.exists() && file.isFile();
     }
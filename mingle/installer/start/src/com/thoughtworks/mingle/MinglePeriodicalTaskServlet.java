@@ -17,6 +17,7 @@
 
 package com.thoughtworks.mingle;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.thoughtworks.mingle.bootstrap.utils.BootstrapChecks;
 import com.thoughtworks.mingle.rack.LoggedPool;
@@ -31,13 +32,18 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class MinglePeriodicalTaskServlet extends HttpServlet {
 
     private static final String ENABLE_ACTION = "enable";
     private static final String DISABLE_ACTION = "disable";
+    private static final String METRICS_PATH = "/metrics.json";
 
     private ScheduledTasks tasks;
+    private TaskScheduler scheduler;
     private BootstrapChecks checks;
     private static String ENCODING = "UTF-8";
     private RailsPathHelper helper;
@@ -50,7 +56,8 @@ public class MinglePeriodicalTaskServlet extends HttpServlet {
         checks = new BootstrapChecks(getServletContext());
         String configFileName = System.getProperty("mingle.periodicalTaskConfigFile", servletConfig.getInitParameter("tasks.config"));
         File config = MingleConfigUtils.configFile(configFileName);
-        tasks = new ScheduledTasks(config, new PeriodicalTask.Factory(getRuntimePool()));
+        scheduler = new TaskScheduler();
+        tasks = new ScheduledTasks(config, new PeriodicalTask.Factory(getRuntimePool(), scheduler));
         Thread thread = new Thread(new Runnable() {
             @Override
             public void run() {
@@ -80,6 +87,9 @@ public class MinglePeriodicalTaskServlet extends HttpServlet {
         if (tasks != null) {
             tasks.shutdown();
         }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
     }
 
 
@@ -93,16 +103,25 @@ public class MinglePeriodicalTaskServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse response) throws ServletException, IOException {
-        response.setContentType("text/html");
         response.setCharacterEncoding(ENCODING);
 
+        if (METRICS_PATH.equals(req.getPathInfo())) {
+            response.setContentType("application/json");
+            response.setHeader("Cache-Control", "no-cache");
+            response.getWriter().write(new Gson().toJson(metrics()));
+            return;
+        }
+
+        response.setContentType("text/html");
+
         HashMap<String, String> status = new HashMap<String, String>();
 
         for (Task task : tasks.getTasks()) {
             status.put(task.getName(), String.valueOf(task.state()));
         }
 
-        String json = new GsonBuilder().setPrettyPrinting().create().toJson(status);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        String json = gson.toJson(status);
         SimpleTemplateBinding binding = SimpleTemplateBinding.getInstance();
 
         String form = "";
@@ -112,10 +131,25 @@ public class MinglePeriodicalTaskServlet extends HttpServlet {
         }
         binding.bind("form", form);
         binding.bind("status", json);
+        binding.bind("metrics", gson.toJson(metrics()));
+        binding.bind("metrics_url", req.getContextPath() + req.getServletPath() + METRICS_PATH);
 
         response.getWriter().write(binding.tokenize(helper.publicRealPath("background/status.html")).render());
     }
 
+    private Map<String, Map<String, Object>> metrics() {
+        Map<String, Map<String, Object>> result = new TreeMap<String, Map<String, Object>>();
+        for (Task task : tasks.getTasks()) {
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("state", String.valueOf(task.state()));
+            if (task.getMetrics() != null) {
+                entry.putAll(task.getMetrics().toMap());
+            }
+            result.put(task.getName(), entry);
+        }
+        return result;
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String action = req.getParameter("action");
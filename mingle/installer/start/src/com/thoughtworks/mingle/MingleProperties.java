@@ -34,6 +34,7 @@ public class MingleProperties {
     public static final String MINGLE_PROPERTIES_EXAMPLE_MESSAGE = "#Refer to the mingle.properties.example file in your Mingle installation folder to see other properties that can be set to configure Mingle";
     public static final String MULTI_APP_ROUTING_CONFIG = "mingle.multiAppRoutingConfig";
     public static final String MULTI_APP_ROUTING_ENABLED = "mingle.multiAppRoutingEnabled";
+    public static final String MULTI_APP_ROUTING_REFRESH_INTERVAL = "mingle.multiAppRoutingRefreshInterval";
     public static final String FILE_NAME = "mingle.properties";
     public static final String MINGLE_PROPERTIES_KEY = FILE_NAME;
     /**
@@ -68,6 +69,20 @@ public class MingleProperties {
     public static final String MINGLE_SEARCH_HOST = "mingle.search.host";
     public static final String MINGLE_SEARCH_PORT = "mingle.search.port";
 
+    public static final String CONNECTOR_PROTOCOL_KEY = "mingle.connector.protocol";
+    public static final String CONNECTOR_HTTP2_KEY = "mingle.connector.http2";
+    public static final String CONNECTOR_MAX_THREADS_KEY = "mingle.connector.maxThreads";
+    public static final String CONNECTOR_MIN_SPARE_THREADS_KEY = "mingle.connector.minSpareThreads";
+    public static final String CONNECTOR_MAX_QUEUE_SIZE_KEY = "mingle.connector.maxQueueSize";
+    public static final String CONNECTOR_MAX_CONNECTIONS_KEY = "mingle.connector.maxConnections";
+    public static final String CONNECTOR_ACCEPT_COUNT_KEY = "mingle.connector.acceptCount";
+    public static final String CONNECTOR_CONNECTION_TIMEOUT_KEY = "mingle.connector.connectionTimeout";
+    public static final String CONNECTOR_KEEP_ALIVE_TIMEOUT_KEY = "mingle.connector.keepAliveTimeout";
+    public static final String CONNECTOR_MAX_KEEP_ALIVE_REQUESTS_KEY = "mingle.connector.maxKeepAliveRequests";
+    public static final String CONNECTOR_COMPRESSION_KEY = "mingle.connector.compression";
+    public static final String CONNECTOR_COMPRESSION_MIN_SIZE_KEY = "mingle.connector.compressionMinSize";
+    public static final String CONNECTOR_COMPRESSABLE_MIME_TYPE_KEY = "mingle.connector.compressableMimeType";
+
     public static final String NO_BACKGROUND_JOB_KEY = "mingle.noBackgroundJob";
     public static final String DEPRECATED_JRUBY_MAX_ACCESS_THREADS_KEY = "mingle.jrubyMaxAccessThreads";
     public static final String JRUBY_MIN_RUNTIMES_KEY = "jruby.min.runtimes";
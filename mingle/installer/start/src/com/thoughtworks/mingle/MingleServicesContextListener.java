@@ -46,5 +46,6 @@ public class MingleServicesContextListener implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent servletContextEvent) {
         customServices.stop();
+        Memcached.shutdownClient();
     }
 }
@@ -17,29 +17,37 @@
 
 package com.thoughtworks.mingle;
 
+import com.thoughtworks.mingle.rack.BorrowerClass;
 import com.thoughtworks.mingle.rack.LoggedPool;
 import com.thoughtworks.mingle.rack.MingleApplication;
+import com.thoughtworks.mingle.rack.PoolCapacityListener;
+import com.thoughtworks.mingle.util.MBeans;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class PeriodicalTask implements Serializable, Runnable, Task {
+public class PeriodicalTask implements Serializable, Runnable, Task, PoolCapacityListener {
     private Status currentState = Status.IDLE;
     private boolean hasAlreadyRun = false;
 
     public static class Factory implements ScheduledTasks.Factory {
 
         private LoggedPool runtimePool;
+        private TaskScheduler scheduler;
 
-        public Factory(LoggedPool runtimePool) {
+        public Factory(LoggedPool runtimePool, TaskScheduler scheduler) {
             this.runtimePool = runtimePool;
+            this.scheduler = scheduler;
         }
 
         @Override
         public Task create(TaskConfig config) {
-            return new PeriodicalTask(config, runtimePool);
+            return new PeriodicalTask(config, runtimePool, scheduler);
         }
     }
 
@@ -47,7 +55,17 @@ public class PeriodicalTask implements Serializable, Runnable, Task {
 
     private TaskConfig config;
 
-    private Thread thread = null;
+    private TaskScheduler scheduler;
+
+    private ScheduledFuture<?> nextRun = null;
+
+    private boolean destroyed = false;
+
+    private AtomicBoolean waitingForCapacity = new AtomicBoolean(false);
+
+    private int consecutiveFailures = 0;
+
+    private TaskMetrics metrics = new TaskMetrics();
 
     private int interval = 60;
 
@@ -56,14 +74,17 @@ public class PeriodicalTask implements Serializable, Runnable, Task {
     private Boolean runOnce;
     private String name;
     private String command;
-    private static final int TWO_MINUTES_IN_MILLIS = 1000 * 60 * 2;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000 * 10;
+    private static final long MAX_RETRY_DELAY_MILLIS = 1000 * 60 * 10;
+    private static final long WAIT_FOR_CAPACITY = -1;
 
     public String getName() {
         return name;
     }
 
-    public PeriodicalTask(TaskConfig config, LoggedPool pool) {
+    public PeriodicalTask(TaskConfig config, LoggedPool pool, TaskScheduler scheduler) {
         this.config = config;
+        this.scheduler = scheduler;
         this.name = config.getName();
         this.command = config.getCommand();
         this.interval = parseInterval(config.getInterval(), config.getIntervalSystemProperty());
@@ -77,9 +98,46 @@ public class PeriodicalTask implements Serializable, Runnable, Task {
     }
 
     public void start() {
-        thread = new Thread(this);
-        thread.setName(this.name + "[Thread-" + thread.getId() + "]");
-        thread.start();
+        logInfo(" initialized to only run when " + String.valueOf(minIdle) + " threads or more can access jruby runtime, interval: " + String.valueOf(this.interval));
+        int jitter = ThreadLocalRandom.current().nextInt(500, 16000);
+        logInfo("   " + name + " => jitter: " + jitter);
+        pool.addCapacityListener(this);
+        MBeans.register(metrics, mbeanName());
+        scheduleNextRun(jitter);
+    }
+
+    @Override
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    private String mbeanName() {
+        return MBeans.name("BackgroundJob", name);
+    }
+
+    /** runs a job that was skipped for lack of idle runtimes as soon as enough of them are returned */
+    @Override
+    public boolean capacityAvailable(int idleApplications) {
+        if (idleApplications >= minIdle && waitingForCapacity.compareAndSet(true, false)) {
+            scheduleNextRun(0);
+            return true;
+        }
+        return false;
+    }
+
+    private void waitForCapacity() {
+        waitingForCapacity.set(true);
+        // capacity may have been returned before we started listening for it
+        if (isPoolIdleEnoughToRun() && waitingForCapacity.compareAndSet(true, false)) {
+            scheduleNextRun(0);
+        }
+    }
+
+    private synchronized void scheduleNextRun(long delayMillis) {
+        if (destroyed || scheduler.isShutdown()) {
+            return;
+        }
+        nextRun = scheduler.schedule(this, delayMillis);
     }
 
     private void shutdownOnError(Throwable e, String message) {
@@ -92,106 +150,125 @@ public class PeriodicalTask implements Serializable, Runnable, Task {
         }).start();
     }
 
-    private void runOnce() throws Exception {
+    /** @return the backoff before the next run when this one failed, 0 after a success, in milliseconds */
+    private long runOnce() throws Exception {
         MingleApplication mingleApplication = null;
+        long startTime = System.nanoTime();
+        long poolWait = 0;
         try {
             long heapStart = -1;
-            long startTime = -1;
             boolean captureStats = logger.isDebugEnabled();
 
             if (captureStats) {
                 heapStart = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-                startTime = System.currentTimeMillis();
             }
 
-            mingleApplication = (MingleApplication) pool.borrowApplication("Task: " + thread.getName());
+            mingleApplication = (MingleApplication) pool.borrowApplication("Task: " + name + "[" + Thread.currentThread().getName() + "]", BorrowerClass.BACKGROUND);
+            poolWait = millisSince(startTime);
             mingleApplication.evalScriptlet(backgroundJobScript());
             pool.finishedWithApplication(mingleApplication);
 
             hasAlreadyRun = true;
+            consecutiveFailures = 0;
+            long duration = millisSince(startTime);
+            metrics.recordRun(duration, poolWait, false);
 
             if (captureStats) {
                 long heapDiff = ((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) - heapStart) / 1000000;
-                long duration = System.currentTimeMillis() - startTime;
                 if (duration > 25 || Math.abs(heapDiff) > 5) {
                     logDebug("job complete (duration=" + duration + " msecs, heap diff=" + heapDiff + " MB)");
                 }
             }
+        } catch (PoolAdmissionRejectedException e) {
+            metrics.recordRejected();
+            logInfo(command + " was not admitted to the JRuby runtime pool and will try again next interval: " + e.getMessage());
         } catch (Exception e) {
             if (state().equals(Status.HALTING)) {
                 throw new InterruptedException("This task should be stopped.");
             }
             logError("Could not execute: " + command, e);
             pool.finishedWithApplication(mingleApplication);
-            logInfo(command + " returning JRuby runtime access to pool and will restart this job in 2 minutes.");
-            try {
-                Thread.sleep(TWO_MINUTES_IN_MILLIS);
-            } catch (InterruptedException ex) {
-                // can't do much here ...
-            }
+            metrics.recordRun(millisSince(startTime), poolWait, true);
+            long retryDelay = retryDelay(++consecutiveFailures);
+            logInfo(command + " returning JRuby runtime access to pool and will restart this job in " + (retryDelay / 1000) + " seconds.");
+            return retryDelay;
         }
+        return 0;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 
     public void destroy() {
         disable();
-        thread.interrupt();
-        try {
-            thread.join(1000 * 2); // wait for 2 sec for thread stop
-            logInfo("stopped.");
-        } catch (InterruptedException e) {
-            logError("Problem stopping");
+        pool.removeCapacityListener(this);
+        MBeans.unregister(mbeanName());
+        synchronized (this) {
+            destroyed = true;
+            if (nextRun != null) {
+                nextRun.cancel(true);
+            }
         }
+        logInfo("stopped.");
     }
 
     protected String backgroundJobScript() {
         return "BackgroundJob.new(lambda { " + command + " }, '" + name + "').run_once";
     }
 
+    /** exponential backoff for consecutive failures, capped at MAX_RETRY_DELAY_MILLIS */
+    static long retryDelay(int consecutiveFailures) {
+        int doublings = Math.min(Math.max(consecutiveFailures - 1, 0), 20);
+        return Math.min(INITIAL_RETRY_DELAY_MILLIS << doublings, MAX_RETRY_DELAY_MILLIS);
+    }
+
     private boolean isPoolIdleEnoughToRun() {
         return pool.getStatus().getIdleApplications() >= minIdle;
     }
 
     @Override
     public void run() {
-        logInfo(" initialized to only run when " + String.valueOf(minIdle) + " threads or more can access jruby runtime, interval: " + String.valueOf(this.interval));
-        try {
-            int jitter = ThreadLocalRandom.current().nextInt(500, 16000);
-            logInfo("   " + name + " => jitter: " + jitter);
-            Thread.sleep(jitter);
-        } catch (InterruptedException e) {
-            // ignore
-        }
+        long delay = this.interval * 1000L;
         try {
-            while (!thread.isInterrupted()) {
-                if (isEnabled() && isPoolIdleEnoughToRun()) {
-                    markAs(Status.RUNNING);
-                    runOnce();
-                    if (state().equals(Status.RUNNING)) {
-                        markAs(Status.IDLE);
-                    }
-                    if (shouldOnlyRunOnce()) {
-                        logInfo("Job has run once and now stopping");
-                        disable();
-                    }
-                    if (state().equals(Status.HALTING)) {
-                        markAs(Status.DISABLED);
-                    }
-                } else {
-                    if (!isEnabled()) {
-                        logDebug("Skipping run because " + minIdle + " idle threads not available");
-                    }
+            if (isEnabled() && isPoolIdleEnoughToRun()) {
+                markAs(Status.RUNNING);
+                long retryDelay = runOnce();
+                if (retryDelay > 0) {
+                    delay = retryDelay; // instead of the interval
+                }
+                if (state().equals(Status.RUNNING)) {
+                    markAs(Status.IDLE);
+                }
+                if (shouldOnlyRunOnce()) {
+                    logInfo("Job has run once and now stopping");
+                    disable();
+                }
+                if (state().equals(Status.HALTING)) {
+                    markAs(Status.DISABLED);
                 }
-                Thread.sleep(this.interval * 1000); // wait for interval
+            } else if (isEnabled()) {
+                metrics.recordSkippedForIdle();
+                logDebug("Skipping run because " + minIdle + " idle threads not available, waiting for runtimes to be returned");
+                delay = WAIT_FOR_CAPACITY;
             }
         } catch (InterruptedException e) {
-            // break out of loop
+            logInfo("Job has completed its run");
+            return;
         } catch (Exception e) {
             logError("Could not start " + this.command, e);
+            logInfo("Job has completed its run");
+            return;
         } catch (Throwable t) {
             String message = "Error caught while running " + this.command + ". We're sorry but Mingle found a problem it couldn't fix. Please contact your Mingle administrator to resolve this issue.";
             PeriodicalTask.this.shutdownOnError(t, message);
+            return;
+        }
+        if (delay == WAIT_FOR_CAPACITY && isEnabled()) {
+            waitForCapacity();
+        } else {
+            scheduleNextRun(Math.max(delay, 0)); // wait for interval
         }
-        logInfo("Job has completed its run");
     }
 
     private boolean isEnabled() {
@@ -0,0 +1,218 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Finds gzip and brotli encoded copies of compressible public files, so the connector does not compress the
+ * same bytes on every request. Copies next to the files, as sprockets writes them for compiled assets, are
+ * used as they are. For files without one, a gzip copy is written once at startup to the generated directory.
+ *
+ * Nothing here can encode brotli, so .br copies are only used when they are shipped. The Tomcat connector
+ * takes only gzip for already encoded, and would compress a brotli body again; .br copies are therefore only
+ * chosen when their body goes out through sendfile, which the connector never compresses.
+ */
+public class PrecompressedFiles implements Runnable {
+    /** smaller files hardly shrink, and fit in one packet either way */
+    static final long MIN_SIZE = 1024;
+
+    private static final Pattern COMPRESSIBLE = Pattern.compile(".*\\.(js|css|html?|svg|txt|xml|json|map)$", Pattern.CASE_INSENSITIVE);
+    private static Logger logger = new Logger();
+
+    private final File publicDir;
+    private final File generatedDir;
+    private final FileSender sender;
+    private final PublicFileIndex index;
+    private final Set<String> generated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public static class Variant {
+        public final String encoding;
+        public final FileSender.Metadata file;
+
+        Variant(String encoding, FileSender.Metadata file) {
+            this.encoding = encoding;
+            this.file = file;
+        }
+    }
+
+    /**
+     * @param generatedDir where gzip copies are written, null to only use the shipped ones
+     * @param index        answers whether copies exist without asking the disk, may be null
+     */
+    public PrecompressedFiles(File publicDir, File generatedDir, FileSender sender, PublicFileIndex index) {
+        this.publicDir = publicDir;
+        this.generatedDir = generatedDir;
+        this.sender = sender;
+        this.index = index;
+    }
+
+    public static boolean isCompressible(String path) {
+        return COMPRESSIBLE.matcher(path).matches();
+    }
+
+    /**
+     * The encoded copy of file to send for the request, null to send the file itself.
+     *
+     * @param path path of file in the public directory, as requested
+     */
+    public Variant variant(HttpServletRequest request, String path, FileSender.Metadata file) throws IOException {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        if (accepts(acceptEncoding, "br") && request.getHeader("Range") == null) {
+            FileSender.Metadata br = shipped(path + ".br", file);
+            if (br != null && FileSender.sendsFile(request, br.length)) {
+                return new Variant("br", br);
+            }
+        }
+
+        if (accepts(acceptEncoding, "gzip")) {
+            FileSender.Metadata gz = shipped(path + ".gz", file);
+            if (gz == null && generatedDir != null && generated.contains(path)) {
+                gz = upToDate(sender.metadata(generatedDir, new File(generatedDir, path + ".gz")), file);
+            }
+            if (gz != null) {
+                return new Variant("gzip", gz);
+            }
+        }
+        return null;
+    }
+
+    private FileSender.Metadata shipped(String path, FileSender.Metadata original) throws IOException {
+        if (index != null && !index.isFile(path)) {
+            return null;
+        }
+        return upToDate(sender.metadata(publicDir, new File(publicDir, path)), original);
+    }
+
+    private static FileSender.Metadata upToDate(FileSender.Metadata copy, FileSender.Metadata original) {
+        return copy != null && copy.lastModified >= original.lastModified ? copy : null;
+    }
+
+    /** whether the Accept-Encoding header lists coding without q=0 */
+    static boolean accepts(String acceptEncoding, String coding) {
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(coding)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0{0,3})?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public void start() {
+        if (generatedDir == null) {
+            return;
+        }
+        Thread thread = new Thread(this, "PrecompressedFiles");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Writes the missing gzip copies; requests for files not done yet are sent as they are until then.
+     */
+    @Override
+    public void run() {
+        final Path root = publicDir.toPath();
+        final int[] written = new int[1];
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String path = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (attrs.isRegularFile() && attrs.size() >= MIN_SIZE && isCompressible(path)) {
+                        if (generate(file.toFile(), path)) {
+                            written[0]++;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            logger.info("Precompressed files: " + generated.size() + " gzip copies in " + generatedDir + ", " + written[0] + " written");
+        } catch (IOException e) {
+            logger.info("Precompressed files: could not write gzip copies to " + generatedDir + ": " + e.getMessage());
+        }
+    }
+
+    /** true when a copy was written, false when an up to date one was found or compressing does not pay */
+    boolean generate(File file, String path) throws IOException {
+        File sibling = new File(file.getPath() + ".gz");
+        if (sibling.lastModified() >= file.lastModified()) {
+            return false;
+        }
+
+        File target = new File(generatedDir, path + ".gz");
+        if (target.lastModified() >= file.lastModified()) {
+            generated.add(path);
+            return false;
+        }
+
+        Files.createDirectories(target.getParentFile().toPath());
+        File temp = new File(target.getPath() + ".tmp");
+        try (OutputStream out = new BestGZIPOutputStream(new FileOutputStream(temp))) {
+            Files.copy(file.toPath(), out);
+        }
+        if (temp.length() >= file.length()) {
+            Files.delete(temp.toPath());
+            return false;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generated.add(path);
+        return true;
+    }
+
+    private static class BestGZIPOutputStream extends GZIPOutputStream {
+        BestGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * In memory index of the files under the public directory, so telling static from dynamic requests needs no
+ * file system calls. The tree is read once into an immutable trie of path segments; a WatchService reports
+ * changes, after which the whole trie is read again and swapped in.
+ *
+ * Without a working WatchService the index could go stale, so lookups then go to the file system.
+ */
+public class PublicFileIndex implements Runnable {
+    private static final long SETTLE_MILLIS = 200;
+    private static final Map<String, PublicFileIndex> INDEXES = new ConcurrentHashMap<String, PublicFileIndex>();
+    private static Logger logger = new Logger();
+
+    private final Path root;
+    private final AtomicReference<Node> tree = new AtomicReference<Node>();
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * The index of the public directory of the web application, shared by everything asking for it; null when
+     * the directory is not on the file system.
+     */
+    public static PublicFileIndex of(RailsPathHelper helper) {
+        String publicDir = helper.publicRealPath("/");
+        if (publicDir == null) {
+            return null;
+        }
+        PublicFileIndex index = INDEXES.get(publicDir);
+        if (index == null) {
+            synchronized (INDEXES) {
+                index = INDEXES.get(publicDir);
+                if (index == null) {
+                    index = new PublicFileIndex(new File(publicDir));
+                    index.start();
+                    INDEXES.put(publicDir, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    PublicFileIndex(File root) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+    }
+
+    void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.info("Public files: cannot watch " + root + " for changes, looking files up on disk: " + e.getMessage());
+            return;
+        }
+        tree.set(build());
+        thread = new Thread(this, "PublicFileIndex");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Public files: indexed and watching " + root);
+    }
+
+    /**
+     * Whether the path of a request, relative to the public directory, is a file in it.
+     */
+    public boolean isFile(String path) {
+        Node node = tree.get();
+        if (node == null) {
+            return isFileOnDisk(path);
+        }
+
+        int start = 0;
+        int length = path.length();
+        while (start < length && node != null) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                String segment = path.substring(start, end);
+                if (segment.equals(".") || segment.equals("..") || segment.indexOf('\\') >= 0) {
+                    return isFileOnDisk(path); // resolved by the file system, as before
+                }
+                node = node.children.get(segment);
+            }
+            start = end + 1;
+        }
+        return node != null && node.file;
+    }
+
+    private boolean isFileOnDisk(String path) {
+        return new File(root.toFile(), path).isFile();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                key.reset();
+                // a deploy or an asset compile changes many files, index once they are all written
+                Thread.sleep(SETTLE_MILLIS);
+                drain();
+                tree.set(build());
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void drain() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.info("Public files: could not stop watching " + root + ": " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    /** reads the tree, registering every directory with the watch service on the way */
+    private Node build() {
+        final Builder top = new Builder();
+        final Map<Path, Builder> directories = new HashMap<Path, Builder>();
+        directories.put(root, top);
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    if (!dir.equals(root)) {
+                        Builder directory = new Builder();
+                        directories.get(dir.getParent()).children.put(dir.getFileName().toString(), directory);
+                        directories.put(dir, directory);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        directories.get(file.getParent()).children.put(file.getFileName().toString(), new Builder(true));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; // unreadable, or a symbolic link loop
+                }
+            });
+        } catch (IOException e) {
+            logger.info("Public files: could not index " + root + ", looking files up on disk: " + e.getMessage());
+            return null;
+        }
+        return top.build();
+    }
+
+    private static class Node {
+        private static final Node FILE = new Node(true, Collections.<String, Node>emptyMap());
+
+        final boolean file;
+        final Map<String, Node> children;
+
+        Node(boolean file, Map<String, Node> children) {
+            this.file = file;
+            this.children = children;
+        }
+    }
+
+    private static class Builder {
+        final boolean file;
+        final Map<String, Builder> children = new HashMap<String, Builder>();
+
+        Builder() {
+            this(false);
+        }
+
+        Builder(boolean file) {
+            this.file = file;
+        }
+
+        Node build() {
+            if (file) {
+                return Node.FILE;
+            }
+            Map<String, Node> nodes = new HashMap<String, Node>(children.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Builder> child : children.entrySet()) {
+                nodes.put(child.getKey(), child.getValue().build());
+            }
+            return new Node(false, Collections.unmodifiableMap(nodes));
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package com.thoughtworks.mingle;
 
+import com.thoughtworks.mingle.rack.BorrowerClass;
 import com.thoughtworks.mingle.rack.LoggedPool;
 import com.thoughtworks.mingle.rack.MingleApplication;
 import org.jruby.runtime.builtin.IRubyObject;
@@ -45,7 +46,7 @@ public class RubyExpression {
     }
 
     public IRubyObject evaluateUsingBorrower(String borrower) throws Exception {
-        MingleApplication application = (MingleApplication) pool.borrowApplication("RubyExpression(" + borrower + "): " + expression);
+        MingleApplication application = (MingleApplication) pool.borrowApplication("RubyExpression(" + borrower + "): " + expression, BorrowerClass.ADMIN);
         try {
             return application.evalScriptlet(expression);
         } finally {
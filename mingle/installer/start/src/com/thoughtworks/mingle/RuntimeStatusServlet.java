@@ -17,8 +17,12 @@
 
 package com.thoughtworks.mingle;
 
+import com.google.gson.GsonBuilder;
+import com.thoughtworks.mingle.rack.BorrowerClass;
+import com.thoughtworks.mingle.rack.LatencyHistogram;
 import com.thoughtworks.mingle.rack.LoggedPool;
 import com.thoughtworks.mingle.rack.PoolStatus;
+import com.thoughtworks.mingle.rack.RuntimePoolMetrics;
 import com.thoughtworks.mingle.services.ElasticSearch;
 import com.thoughtworks.mingle.ManifestUtil;
 import org.apache.activemq.broker.BrokerRegistry;
@@ -63,6 +67,7 @@ import java.util.Set;
 
 public class RuntimeStatusServlet extends HttpServlet {
 
+    private static final String POOL_METRICS_PATH = "/pool.json";
     private static final Map<String, String> JAVA_PROPERTIES_TO_DISPLAY_NAMES = new LinkedHashMap<String, String>();
 
     static {
@@ -96,6 +101,11 @@ public class RuntimeStatusServlet extends HttpServlet {
     }
 
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!removePublicStatusPage && POOL_METRICS_PATH.equals(req.getPathInfo())) {
+            renderPoolMetrics(resp);
+            return;
+        }
+
         healthCheck();
         if (removePublicStatusPage) {
             return;
@@ -172,6 +182,7 @@ public class RuntimeStatusServlet extends HttpServlet {
         out.println("<a href='" + getServletContext().getContextPath() + "/system_monitor/thread_dump'> <h4> JRuby runtime threads dump </h4> </a>");
         out.println("<a href='" + getServletContext().getContextPath() + "/system_monitor/caching'> <h4> Caching stats (Memcached servers and ProjectCache) </h4> </a>");
         out.println("<a href='" + getServletContext().getContextPath() + "/background_status'> <h4>Background Jobs status</h4> </a>");
+        out.println("<a href='" + getServletContext().getContextPath() + "/status" + POOL_METRICS_PATH + "'> <h4>JRuby runtime pool metrics (JSON)</h4> </a>");
     }
 
     private void printStylesheets(ServletOutputStream out) throws IOException {
@@ -239,6 +250,40 @@ public class RuntimeStatusServlet extends HttpServlet {
             tableRow(String.valueOf(object), borrowers.get(object), out);
         }
         out.println("</table>");
+
+        RuntimePoolMetrics metrics = poolStatus.getMetrics();
+        if (metrics == null) {
+            return;
+        }
+        out.println("<h4>JRuby Runtime Wait and Hold Times (msecs)</h4>");
+        out.println("<table>");
+        out.println("<tr><th>Borrower</th><th>Borrows</th><th>Rejections</th><th>Wait p50/p95/p99</th><th>Hold p50/p95/p99</th></tr>");
+        Map<String, Long> borrows = metrics.getBorrowCounts();
+        Map<String, Long> rejections = metrics.getRejectionCounts();
+        for (BorrowerClass borrowerClass : BorrowerClass.values()) {
+            String key = borrowerClass.name().toLowerCase();
+            out.println("<tr><td>" + key + "</td>" +
+                    "<td>" + borrows.get(key) + "</td>" +
+                    "<td>" + rejections.get(key) + "</td>" +
+                    "<td>" + percentiles(metrics.queueWait(borrowerClass)) + "</td>" +
+                    "<td>" + percentiles(metrics.holdTime(borrowerClass)) + "</td></tr>");
+        }
+        out.println("</table>");
+    }
+
+    private String percentiles(LatencyHistogram histogram) {
+        return histogram.percentile(50) + "/" + histogram.percentile(95) + "/" + histogram.percentile(99);
+    }
+
+    private void renderPoolMetrics(HttpServletResponse resp) throws IOException, ServletException {
+        RuntimePoolMetrics metrics = getRuntimePool().getStatus().getMetrics();
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        if (metrics == null) {
+            resp.getWriter().write("{}");
+            return;
+        }
+        resp.getWriter().write(new GsonBuilder().setPrettyPrinting().create().toJson(metrics.toMap()));
     }
 
     private void renderDatabaseReport(ServletOutputStream out) throws IOException, ServletException {
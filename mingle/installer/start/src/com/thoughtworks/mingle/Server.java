@@ -20,12 +20,19 @@ package com.thoughtworks.mingle;
 import com.thoughtworks.mingle.security.MingleSSLValidations;
 import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardThreadExecutor;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.valves.AccessLogValve;
 import org.apache.catalina.valves.Constants;
 import org.apache.commons.lang.StringUtils;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +44,8 @@ import java.util.Map;
 public class Server {
     private final Logger logger = LoggerFactory.getLogger(Server.class);
 
+    private static final String ALSO_VIEWING_SERVLET = "alsoViewing";
+
     private Tomcat server;
     private MingleProperties mingleProperties;
 
@@ -71,7 +80,7 @@ public class Server {
         return server.getServer().getState().toString();
     }
 
-    public void prepare() throws MingleSSLValidations.ValidationException, ServletException, IOException {
+    public void prepare() throws MingleSSLValidations.ValidationException, ConnectorSettings.ValidationException, ServletException, IOException {
         mingleProperties.configureSystemProperties();
         String rootDir = new File(".").getCanonicalPath();
         System.setProperty(Globals.CATALINA_HOME_PROP, rootDir);
@@ -99,19 +108,50 @@ public class Server {
         server.getServer().await();
     }
 
-    private void configureConnector() {
+    private void configureConnector() throws ConnectorSettings.ValidationException {
+        ConnectorSettings settings = new ConnectorSettings(System.getProperties(), System.getenv().get("TCCON"));
+        logger.info("Connector settings: " + settings);
 
-        String connectorType = System.getenv().get("TCCON");
-        if ("bio".equalsIgnoreCase(connectorType)) {
-            logger.info("*** Forcing bio connector");
-            Connector connector = new Connector("org.apache.coyote.http11.Http11Protocol");
-            server.setConnector(connector);
-            server.getService().addConnector(connector);
-        }
+        Connector connector = new Connector(settings.protocolClassName());
+        server.setConnector(connector);
+        server.getService().addConnector(connector);
 
         configureListener();
         configureSSLIfNeeded();
-        configureOtherConnectorOptions();
+        configureExecutor(settings);
+        configureOtherConnectorOptions(settings);
+        if (settings.http2) {
+            configureHttp2();
+        }
+    }
+
+    /**
+     * request threads come from an executor of the service rather than a pool private to the connector, so they
+     * are bounded and visible in JMX under one name whichever protocol is used
+     */
+    private void configureExecutor(ConnectorSettings settings) {
+        StandardThreadExecutor executor = new StandardThreadExecutor();
+        executor.setName("mingleHttpThreadPool");
+        executor.setNamePrefix("mingle-http-");
+        if (settings.maxThreads != null) executor.setMaxThreads(settings.maxThreads);
+        if (settings.minSpareThreads != null) executor.setMinSpareThreads(settings.minSpareThreads);
+        // the executor does not start with more spare threads than threads
+        executor.setMinSpareThreads(Math.min(executor.getMinSpareThreads(), executor.getMaxThreads()));
+        if (settings.maxQueueSize != null) executor.setMaxQueueSize(settings.maxQueueSize);
+        server.getService().addExecutor(executor);
+        ((AbstractProtocol<?>) server.getConnector().getProtocolHandler()).setExecutor(executor);
+    }
+
+    /** the bundled Tomcat 8.0 has no HTTP/2; the upgrade is looked up so it works once Tomcat is upgraded */
+    private void configureHttp2() {
+        try {
+            Class<?> upgradeProtocol = Class.forName("org.apache.coyote.UpgradeProtocol");
+            Object http2 = Class.forName("org.apache.coyote.http2.Http2Protocol").newInstance();
+            Connector.class.getMethod("addUpgradeProtocol", upgradeProtocol).invoke(server.getConnector(), http2);
+            logger.info("HTTP/2 is enabled.");
+        } catch (ReflectiveOperationException e) {
+            logger.warn(MingleProperties.CONNECTOR_HTTP2_KEY + " is ignored, this Tomcat does not support HTTP/2.");
+        }
     }
 
     private void configureListener() {
@@ -124,11 +164,24 @@ public class Server {
         logger.info("Setting up listener on inet[" + server.getConnector().getAttribute("address") + ":" + server.getConnector().getPort() + "]");
     }
 
-    private void configureOtherConnectorOptions() {
+    private void configureOtherConnectorOptions(ConnectorSettings settings) {
+        Connector connector = server.getConnector();
+        setIfGiven(connector, "maxConnections", settings.maxConnections);
+        setIfGiven(connector, "acceptCount", settings.acceptCount);
+        setIfGiven(connector, "connectionTimeout", settings.connectionTimeout);
+        setIfGiven(connector, "keepAliveTimeout", settings.keepAliveTimeout);
+        setIfGiven(connector, "maxKeepAliveRequests", settings.maxKeepAliveRequests);
+
       /* configure GZip compression */
-        server.getConnector().setAttribute("compression", "on");
-        server.getConnector().setAttribute("compressableMimeType",
-                "text/html,text/plain,text/xml,text/css,text/javascript,application/xhtml+xml,application/x-javascript,application/javascript,image/svg+xml");
+        connector.setAttribute("compression", settings.compression);
+        connector.setAttribute("compressableMimeType", settings.compressableMimeType);
+        setIfGiven(connector, "compressionMinSize", settings.compressionMinSize);
+    }
+
+    private static void setIfGiven(Connector connector, String attribute, Integer value) {
+        if (value != null) {
+            connector.setAttribute(attribute, String.valueOf(value));
+        }
     }
 
     private void configureSSLIfNeeded() {
@@ -185,9 +238,40 @@ public class Server {
         }
         logger.info("Loading web.xml from: " + webXmlLocation);
         webContext.getServletContext().setAttribute(Globals.ALT_DD_ATTR, webXmlLocation);
+        webContext.addLifecycleListener(new AsyncServletsConfig(webContext, ALSO_VIEWING_SERVLET));
         configureRequestLogging((StandardContext) webContext);
     }
 
+    /**
+     * web.xml is a 2.3 descriptor and cannot mark servlets as async supported, so it is done here once the
+     * descriptor has been read. All filters only pass the request on, so they are marked as well.
+     */
+    static class AsyncServletsConfig implements LifecycleListener {
+        private final Context context;
+        private final String[] servletNames;
+
+        AsyncServletsConfig(Context context, String... servletNames) {
+            this.context = context;
+            this.servletNames = servletNames;
+        }
+
+        @Override
+        public void lifecycleEvent(LifecycleEvent event) {
+            if (!Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                return;
+            }
+            for (String name : servletNames) {
+                Wrapper wrapper = (Wrapper) context.findChild(name);
+                if (wrapper != null) {
+                    wrapper.setAsyncSupported(true);
+                }
+            }
+            for (FilterDef filter : context.findFilterDefs()) {
+                filter.setAsyncSupported("true");
+            }
+        }
+    }
+
     protected void configureRequestLogging(StandardContext context) {
         AccessLogValve valve = new AccessLogValve();
         valve.setDirectory(System.getProperty(MingleProperties.LOG_DIR_KEY));
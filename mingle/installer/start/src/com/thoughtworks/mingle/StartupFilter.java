@@ -32,11 +32,13 @@ public class StartupFilter implements Filter {
     private BootstrapChecks checks;
     private ServletContext servletContext;
     private RailsPathHelper helper;
+    private PublicFileIndex publicFiles;
 
 
     public void init(final FilterConfig filterConfig) throws ServletException {
         servletContext = filterConfig.getServletContext();
         helper = new RailsPathHelper(servletContext);
+        publicFiles = PublicFileIndex.of(helper);
 
         forwardToWhileStarting = filterConfig.getInitParameter("forwardToWhileStarting");
         if (forwardToWhileStarting == null) {
@@ -112,6 +114,9 @@ public class StartupFilter implements Filter {
         if (request.getPathInfo() != null) {
             path += request.getPathInfo();
         }
+        if (publicFiles != null) {
+            return publicFiles.isFile(path);
+        }
         File f = resolveStaticUriToFilesystem(path);
         return f != null && f.isFile();
     }
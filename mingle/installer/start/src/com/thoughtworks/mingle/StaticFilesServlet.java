@@ -23,32 +23,99 @@ import org.apache.commons.lang.StringUtils;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
 import java.util.regex.Pattern;
 
+/**
+ * Serves the files of the public directory through FileSender, picking precompressed copies of compressible
+ * files (see PrecompressedFiles). Assets compiled by sprockets have the digest of their contents in their names,
+ * so they never change and are cached by browsers for a year.
+ * Requests for anything else are left to the Tomcat DefaultServlet.
+ */
 public class StaticFilesServlet extends DefaultServlet {
+    static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     private static Pattern assetRegex = Pattern.compile("^\\/(assets/|images/|javascripts/|flash/|fonts/|maintenance/|plugin_assets/|favicon\\.ico).*");
+    private static Pattern fingerprintedRegex = Pattern.compile("^/assets/(.*/)?[^/]+-[0-9a-f]{32,64}\\.[^/]+$");
 
     private String cacheControl;
     private String publicRoot;
+    private File publicDir;
+    private FileSender sender;
+    private PrecompressedFiles precompressed;
 
     public static boolean isStaticFile(String requestURI) {
         return assetRegex.matcher(requestURI).matches();
     }
 
+    public static boolean isFingerprinted(String path) {
+        return fingerprintedRegex.matcher(path).matches();
+    }
+
     @Override
     public void init() throws ServletException {
         super.init();
         cacheControl = getServletConfig().getInitParameter("cacheControl");
         publicRoot = getServletContext().getInitParameter("public.root");
+
+        RailsPathHelper helper = new RailsPathHelper(getServletContext());
+        String publicRealPath = helper.publicRealPath("/");
+        if (publicRealPath != null) {
+            publicDir = new File(publicRealPath);
+            sender = new FileSender();
+            precompressed = new PrecompressedFiles(publicDir, generatedDir(), sender, PublicFileIndex.of(helper));
+            precompressed.start();
+        }
+    }
+
+    private File generatedDir() {
+        String swapDir = System.getProperty(MingleProperties.SWAP_DIR_KEY);
+        if (swapDir == null || "false".equals(System.getProperty("mingle.staticFiles.precompress"))) {
+            return null;
+        }
+        return new File(swapDir, "precompressed");
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        if (!StringUtils.isBlank(cacheControl)) {
+        if (!sendPublicFile(request, response, true)) {
+            super.doGet(request, response);
+        }
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        if (!sendPublicFile(request, response, false)) {
+            super.doHead(request, response);
+        }
+    }
+
+    /** false when the request is not for a file in the public directory */
+    private boolean sendPublicFile(HttpServletRequest request, HttpServletResponse response, boolean includeBody) throws IOException {
+        String path = super.getRelativePath(request);
+        if (isFingerprinted(path)) {
+            response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        } else if (!StringUtils.isBlank(cacheControl)) {
             response.setHeader("Cache-Control", cacheControl);
         }
-        super.doGet(request, response);
+
+        FileSender.Metadata file = publicDir == null ? null : sender.metadata(publicDir, new File(publicDir, path));
+        if (file == null) {
+            return false;
+        }
+
+        String contentType = getServletContext().getMimeType(file.file.getName());
+        if (PrecompressedFiles.isCompressible(path)) {
+            response.addHeader("Vary", "Accept-Encoding");
+            PrecompressedFiles.Variant variant = precompressed.variant(request, path, file);
+            if (variant != null) {
+                response.setHeader("Content-Encoding", variant.encoding);
+                file = variant.file;
+            }
+        }
+        sender.send(request, response, file, contentType, includeBody);
+        return true;
     }
 
     @Override
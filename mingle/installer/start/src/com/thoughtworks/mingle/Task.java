@@ -39,4 +39,6 @@ public interface Task {
     public Status state();
 
     public void enable();
+
+    public TaskMetrics getMetrics();
 }
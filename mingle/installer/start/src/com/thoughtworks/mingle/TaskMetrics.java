@@ -0,0 +1,151 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Always-on execution metrics of one background job worker. The durations of the most recent runs are
+ * kept in a fixed size ring buffer of primitives, so recording a run does not allocate.
+ */
+public class TaskMetrics implements TaskMetricsMXBean {
+    public static final int DEFAULT_HISTORY_SIZE = 20;
+
+    private final long[] recentDurations;
+    private int next = 0;
+    private int recorded = 0;
+
+    private long runCount = 0;
+    private long failureCount = 0;
+    private long skippedForIdleCount = 0;
+    private long rejectedCount = 0;
+    private long lastRunAt = 0;
+    private long totalDurationMillis = 0;
+    private long totalPoolWaitMillis = 0;
+
+    public TaskMetrics() {
+        this(DEFAULT_HISTORY_SIZE);
+    }
+
+    public TaskMetrics(int historySize) {
+        this.recentDurations = new long[historySize];
+    }
+
+    public synchronized void recordRun(long durationMillis, long poolWaitMillis, boolean failed) {
+        runCount++;
+        if (failed) {
+            failureCount++;
+        }
+        lastRunAt = System.currentTimeMillis();
+        totalDurationMillis += durationMillis;
+        totalPoolWaitMillis += poolWaitMillis;
+        recentDurations[next] = durationMillis;
+        next = (next + 1) % recentDurations.length;
+        recorded = Math.min(recorded + 1, recentDurations.length);
+    }
+
+    public synchronized void recordSkippedForIdle() {
+        skippedForIdleCount++;
+    }
+
+    public synchronized void recordRejected() {
+        rejectedCount++;
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized long getSkippedForIdleCount() {
+        return skippedForIdleCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized long getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public synchronized long getLastDurationMillis() {
+        if (recorded == 0) {
+            return 0;
+        }
+        return recentDurations[(next - 1 + recentDurations.length) % recentDurations.length];
+    }
+
+    public synchronized long getAverageDurationMillis() {
+        if (recorded == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < recorded; i++) {
+            total += recentDurations[i];
+        }
+        return total / recorded;
+    }
+
+    public synchronized long getMaxDurationMillis() {
+        long max = 0;
+        for (int i = 0; i < recorded; i++) {
+            max = Math.max(max, recentDurations[i]);
+        }
+        return max;
+    }
+
+    public synchronized long getTotalDurationMillis() {
+        return totalDurationMillis;
+    }
+
+    public synchronized long getTotalPoolWaitMillis() {
+        return totalPoolWaitMillis;
+    }
+
+    /** durations of the most recent runs, oldest first */
+    public synchronized long[] getRecentDurationsMillis() {
+        long[] result = new long[recorded];
+        int oldest = recorded < recentDurations.length ? 0 : next;
+        for (int i = 0; i < recorded; i++) {
+            result[i] = recentDurations[(oldest + i) % recentDurations.length];
+        }
+        return result;
+    }
+
+    /** snapshot suitable for JSON rendering */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("runs", runCount);
+        result.put("failures", failureCount);
+        result.put("skippedForIdle", skippedForIdleCount);
+        result.put("rejected", rejectedCount);
+        result.put("lastRunAt", lastRunAt);
+        result.put("lastDurationMillis", getLastDurationMillis());
+        result.put("averageDurationMillis", getAverageDurationMillis());
+        result.put("maxDurationMillis", getMaxDurationMillis());
+        result.put("totalDurationMillis", totalDurationMillis);
+        result.put("totalPoolWaitMillis", totalPoolWaitMillis);
+        result.put("recentDurationsMillis", getRecentDurationsMillis());
+        return result;
+    }
+}
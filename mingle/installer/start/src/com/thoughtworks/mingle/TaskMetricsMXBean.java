@@ -0,0 +1,43 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+/** JMX view of a background job worker's execution history */
+public interface TaskMetricsMXBean {
+    long getRunCount();
+
+    long getFailureCount();
+
+    long getSkippedForIdleCount();
+
+    long getRejectedCount();
+
+    long getLastRunAt();
+
+    long getLastDurationMillis();
+
+    long getAverageDurationMillis();
+
+    long getMaxDurationMillis();
+
+    long getTotalDurationMillis();
+
+    long getTotalPoolWaitMillis();
+
+    long[] getRecentDurationsMillis();
+}
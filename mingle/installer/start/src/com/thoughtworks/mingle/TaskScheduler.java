@@ -0,0 +1,99 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduler for periodical tasks. Instead of a sleeping thread per task worker, all workers are
+ * timed by one scheduled executor and run on a small bounded set of threads, by default no larger than
+ * the JRuby runtime pool since a job cannot run without a runtime anyway.
+ */
+public class TaskScheduler {
+    public static final String THREADS_KEY = "mingle.backgroundJobThreads";
+
+    private static Logger logger = LoggerFactory.getLogger("Periodical ScheduledTasks");
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    public TaskScheduler() {
+        this(threadsFromSystemProperties());
+    }
+
+    public TaskScheduler(int threads) {
+        executor = new ScheduledThreadPoolExecutor(threads, new TaskThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        logger.info("background jobs will run on " + threads + " shared threads");
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                logger.info("background jobs still running after shutdown was requested");
+            }
+        } catch (InterruptedException e) {
+            // can't do much here ...
+        }
+    }
+
+    private static int threadsFromSystemProperties() {
+        int defaultThreads = Math.max(1, MingleProperties.jrubyMaxRuntimes(System.getProperties()));
+        String threads = System.getProperty(THREADS_KEY);
+        if (threads == null || "".equals(threads)) {
+            return defaultThreads;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(threads));
+        } catch (NumberFormatException e) {
+            logger.error("Ignoring incorrect system property '" + THREADS_KEY + "=" + threads + "', defaulting to " + defaultThreads);
+            return defaultThreads;
+        }
+    }
+
+    private static class TaskThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BackgroundJob-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
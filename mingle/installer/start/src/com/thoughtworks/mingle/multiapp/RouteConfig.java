@@ -17,26 +17,33 @@
 
 package com.thoughtworks.mingle.multiapp;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class RouteConfig {
     private String context;
-    private List<Pattern> routes;
+    private List<String> routeSources;
+    private Pattern routes;
+    private List<Pattern> routesWithGroups;
     private String rootServletName;
 
     public RouteConfig() {
         this.context = this.rootServletName = "";
-        this.routes = Collections.emptyList();
+        this.routeSources = Collections.emptyList();
+        this.routesWithGroups = Collections.emptyList();
     }
 
     public boolean hasRoute(String route) {
-        if (routes.isEmpty())
-            return false;
+        if (routes != null && this.routes.matcher(route).find())
+            return true;
 
-        return this.routes.stream().anyMatch(routePattern -> routePattern.asPredicate().test(route));
+        for (Pattern routePattern : routesWithGroups) {
+            if (routePattern.matcher(route).find())
+                return true;
+        }
+        return false;
     }
 
     public String getContext() {
@@ -46,15 +53,39 @@ public class RouteConfig {
     public String getRootServletName() {
         return rootServletName;
     }
+
+    List<String> getRouteSources() {
+        return routeSources;
+    }
+
     public void setContext(String context) {
         this.context = context;
     }
 
     public void setRoutes(List<String> routes) {
-        if (routes != null && routes.isEmpty())
-            this.routes =  Collections.emptyList();
+        this.routes = null;
+        this.routesWithGroups = Collections.emptyList();
+        if (routes == null || routes.isEmpty()) {
+            this.routeSources = Collections.emptyList();
+            return;
+        }
 
-        this.routes = routes.stream().map(route -> Pattern.compile("\\A"+ route + "\\z")).collect(Collectors.toList());
+        this.routeSources = Collections.unmodifiableList(new ArrayList<String>(routes));
+        List<String> combined = new ArrayList<String>();
+        List<Pattern> withGroups = new ArrayList<Pattern>();
+        for (String route : routes) {
+            Pattern routePattern = Pattern.compile("\\A" + route + "\\z");
+            // group numbers and backreferences would point elsewhere once combined with other routes
+            if (routePattern.matcher("").groupCount() > 0) {
+                withGroups.add(routePattern);
+            } else {
+                combined.add("(?:\\A" + route + "\\z)");
+            }
+        }
+        if (!combined.isEmpty()) {
+            this.routes = Pattern.compile(String.join("|", combined));
+        }
+        this.routesWithGroups = withGroups;
     }
 
     public void setRootServletName(String rootServletName) {
@@ -17,28 +17,126 @@
 
 package com.thoughtworks.mingle.multiapp;
 
+import com.thoughtworks.mingle.InvalidConfigurationException;
+import com.thoughtworks.mingle.Logger;
 import com.thoughtworks.mingle.util.MingleConfigUtils;
 import net.spy.memcached.MemcachedClient;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The routing kill switch is read from memcached in the background, requests only look at the value read
+ * last. Routing stays disabled until the switch was read once, so starting never waits on memcached; when
+ * memcached is slow or down later the last known value is kept until it can be read again.
+ * Route configs can be reloaded while running; a new file replaces the configs in use only once it loaded
+ * and validated, and every replacement increases the version.
+ */
 public class RouteConfigClient {
     public static final String MULTI_APP_ROUTING_DISABLED = "MULTI_APP_ROUTING_DISABLED";
-    private RouteConfigs routingConfig;
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 5000;
+    private static Logger logger = new Logger();
+    private final String multiAppRoutingConfigFile;
+    private volatile RouteConfigs routingConfig;
+    private final AtomicLong version = new AtomicLong(1);
     private final MemcachedClient memcachedClient;
+    private volatile boolean enabled = false;
+    private volatile long refreshedAt;
+    private volatile boolean refreshFailing;
+    private ScheduledExecutorService refresher;
+    private RouteConfigsWatcher watcher;
 
     public RouteConfigClient(String multiAppRoutingConfigFile, MemcachedClient memcachedClient) {
+        this.multiAppRoutingConfigFile = multiAppRoutingConfigFile;
         this.routingConfig = RouteConfigs.build(multiAppRoutingConfigFile);
         this.memcachedClient = memcachedClient;
     }
 
     public boolean isEnabled() {
-        return !MingleConfigUtils.isTruthy(String.valueOf(memcachedClient.get(MULTI_APP_ROUTING_DISABLED)));
+        return enabled;
+    }
+
+    public long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    public void startRefreshing(long intervalMillis) {
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MultiAppRoutingSwitch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh() {
+        try {
+            enabled = !MingleConfigUtils.isTruthy(String.valueOf(memcachedClient.get(MULTI_APP_ROUTING_DISABLED)));
+            refreshedAt = System.currentTimeMillis();
+            if (refreshFailing) {
+                logger.info("MultiAppRouting: routing switch can be read again, routing is " + (enabled ? "enabled" : "disabled"));
+                refreshFailing = false;
+            }
+        } catch (RuntimeException e) {
+            if (!refreshFailing) {
+                logger.info("MultiAppRouting: could not read routing switch, keeping routing " + (enabled ? "enabled" : "disabled") + ": " + e.getMessage());
+                refreshFailing = true;
+            }
+        }
     }
 
     public RouteConfig getConfigForRoute(String requestURI) {
         return routingConfig.getConfigForRoute(requestURI);
     }
 
+    public long getVersion() {
+        return version.get();
+    }
+
+    public synchronized boolean reload() {
+        try {
+            routingConfig = RouteConfigs.load(multiAppRoutingConfigFile);
+            logger.info("MultiAppRouting: reloaded route configs from " + multiAppRoutingConfigFile + ", version " + version.incrementAndGet());
+            return true;
+        } catch (InvalidConfigurationException e) {
+            logger.info("MultiAppRoutingFailure: keeping route configs version " + version.get() + ", " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void watchForChanges() {
+        if (RouteConfigs.isResource(multiAppRoutingConfigFile)) {
+            return;
+        }
+        watcher = new RouteConfigsWatcher(Paths.get(multiAppRoutingConfigFile), this);
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            logger.info("MultiAppRouting: route configs will not be reloaded, could not watch " + multiAppRoutingConfigFile + ": " + e.getMessage());
+            watcher = null;
+        }
+    }
+
     public void destroy() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
         this.memcachedClient.shutdown();
     }
 }
@@ -17,12 +17,15 @@
 
 package com.thoughtworks.mingle.multiapp;
 
+import com.thoughtworks.mingle.InvalidConfigurationException;
 import com.thoughtworks.mingle.Logger;
 import org.yaml.snakeyaml.TypeDescription;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class RouteConfigs {
@@ -30,18 +33,30 @@ public class RouteConfigs {
     private static final String RESOURCE="resource";
     private static Logger logger = new Logger();
 
-    private List<RouteConfig> routeConfigs;
+    private static final RouteConfig NO_ROUTE = new RouteConfig();
+
+    private List<RouteConfig> routeConfigs = Collections.emptyList();
+    private RouteMatcher matcher = new RouteMatcher(routeConfigs, NO_ROUTE, 0);
 
     public void setRouteConfigs(List<RouteConfig> routeConfigs) {
-            this.routeConfigs = routeConfigs;
-        }
+        this.routeConfigs = Collections.unmodifiableList(new ArrayList<RouteConfig>(routeConfigs));
+        this.matcher = new RouteMatcher(routeConfigs, NO_ROUTE, cacheSize());
+    }
 
-    public RouteConfig getConfigForRoute(String route) {
+    public void validate() throws InvalidConfigurationException {
         for (RouteConfig routeConfig : routeConfigs) {
-            if (routeConfig.hasRoute(route))
-                return routeConfig;
+            if (routeConfig == null || isBlank(routeConfig.getContext()) || isBlank(routeConfig.getRootServletName())) {
+                throw new InvalidConfigurationException("every route config needs a context and a rootServletName");
+            }
         }
-        return new RouteConfig();
+    }
+
+    public RouteConfig getConfigForRoute(String route) {
+        return matcher.match(route);
+    }
+
+    private static int cacheSize() {
+        return Integer.getInteger("mingle.multiAppRoutingCacheSize", RouteMatcher.DEFAULT_CACHE_SIZE);
     }
 
     public static RouteConfigs build(String multiAppRoutingConfig) {
@@ -50,7 +65,38 @@ public class RouteConfigs {
         configsType.putListPropertyType("routeConfigs", RouteConfig.class);
         configsConstructor.addTypeDescription(configsType);
         Yaml yaml = new Yaml(configsConstructor);
-        return (RouteConfigs) yaml.load(getRoutingConfigsFile(multiAppRoutingConfig));
+        try (InputStream routingConfigsFile = getRoutingConfigsFile(multiAppRoutingConfig)) {
+            return (RouteConfigs) yaml.load(routingConfigsFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * loads route configs for replacing the ones in use, so unlike {@link #build(String)} every problem
+     * with the file is reported as an invalid configuration
+     */
+    public static RouteConfigs load(String multiAppRoutingConfig) throws InvalidConfigurationException {
+        RouteConfigs routeConfigs;
+        try {
+            routeConfigs = build(multiAppRoutingConfig);
+        } catch (RuntimeException e) {
+            throw new InvalidConfigurationException("could not load route configs from " + multiAppRoutingConfig + ": " + e.getMessage());
+        }
+        if (routeConfigs == null) {
+            throw new InvalidConfigurationException("no route configs in " + multiAppRoutingConfig);
+        }
+        routeConfigs.validate();
+        return routeConfigs;
+    }
+
+    public static boolean isResource(String multiAppRoutingConfigSource) {
+        String[] sourceParts = multiAppRoutingConfigSource.split(":");
+        return sourceParts.length > 1 && sourceParts[0].equals(RESOURCE);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
     }
 
     private static InputStream getRoutingConfigsFile(String multiAppRoutingConfigSource) {
@@ -0,0 +1,101 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle.multiapp;
+
+import com.thoughtworks.mingle.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Reloads the route configs whenever their file is written or replaced.
+ */
+class RouteConfigsWatcher implements Runnable {
+    private static final long SETTLE_MILLIS = 200;
+    private static Logger logger = new Logger();
+
+    private final Path file;
+    private final RouteConfigClient client;
+    private WatchService watchService;
+    private Thread thread;
+
+    RouteConfigsWatcher(Path file, RouteConfigClient client) {
+        this.file = file.toAbsolutePath();
+        this.client = client;
+    }
+
+    void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(this, "RouteConfigsWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("MultiAppRouting: watching " + file + " for changes");
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    // editors write in several steps, wait for the last one
+                    Thread.sleep(SETTLE_MILLIS);
+                    drain();
+                    client.reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void drain() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.info("MultiAppRouting: could not stop watching " + file + ": " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+}
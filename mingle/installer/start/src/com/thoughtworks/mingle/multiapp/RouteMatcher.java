@@ -0,0 +1,122 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle.multiapp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the first route config with a route matching a request uri. Routes are indexed by their literal
+ * prefix in a trie, so only configs with a route that can match are tried, each with a single pattern
+ * combining all its routes but those with capturing groups. Answers are remembered for up to
+ * {@code cacheSize} uris.
+ */
+class RouteMatcher {
+    static final int DEFAULT_CACHE_SIZE = 4096;
+    private static final String META_CHARACTERS = "\\.[]{}()<>*+-=!?^$|";
+
+    private final List<RouteConfig> routeConfigs;
+    private final Node root = new Node();
+    private final RouteConfig noRoute;
+    private final int cacheSize;
+    private final ConcurrentHashMap<String, RouteConfig> cache = new ConcurrentHashMap<String, RouteConfig>();
+
+    RouteMatcher(List<RouteConfig> routeConfigs, RouteConfig noRoute, int cacheSize) {
+        this.routeConfigs = new ArrayList<RouteConfig>(routeConfigs);
+        this.noRoute = noRoute;
+        this.cacheSize = cacheSize;
+        for (int i = 0; i < this.routeConfigs.size(); i++) {
+            for (String route : this.routeConfigs.get(i).getRouteSources()) {
+                insert(literalPrefix(route), i);
+            }
+        }
+    }
+
+    RouteConfig match(String uri) {
+        RouteConfig result = cache.get(uri);
+        if (result != null) {
+            return result;
+        }
+        result = find(uri);
+        if (cache.size() >= cacheSize) {
+            // uris with ids rarely repeat, start over rather than tracking recency on every request
+            cache.clear();
+        }
+        cache.put(uri, result);
+        return result;
+    }
+
+    private RouteConfig find(String uri) {
+        BitSet candidates = (BitSet) root.configs.clone();
+        Node node = root;
+        for (int i = 0; i < uri.length(); i++) {
+            node = node.children.get(uri.charAt(i));
+            if (node == null) {
+                break;
+            }
+            candidates.or(node.configs);
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            RouteConfig routeConfig = routeConfigs.get(i);
+            if (routeConfig.hasRoute(uri)) {
+                return routeConfig;
+            }
+        }
+        return noRoute;
+    }
+
+    private void insert(String prefix, int config) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            Node child = node.children.get(prefix.charAt(i));
+            if (child == null) {
+                child = new Node();
+                node.children.put(prefix.charAt(i), child);
+            }
+            node = child;
+        }
+        node.configs.set(config);
+    }
+
+    /**
+     * the characters every uri matching the route starts with; empty when the route has alternatives
+     * outside of a group or starts with a pattern
+     */
+    static String literalPrefix(String route) {
+        if (route.indexOf('|') >= 0) {
+            return "";
+        }
+        int end = 0;
+        while (end < route.length() && META_CHARACTERS.indexOf(route.charAt(end)) < 0) {
+            end++;
+        }
+        if (end < route.length() && end > 0 && "?*{".indexOf(route.charAt(end)) >= 0) {
+            // the last literal is optional
+            end--;
+        }
+        return route.substring(0, end);
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<Character, Node>(4);
+        private final BitSet configs = new BitSet();
+    }
+}
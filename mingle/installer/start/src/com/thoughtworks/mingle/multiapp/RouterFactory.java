@@ -17,6 +17,8 @@
 
 package com.thoughtworks.mingle.multiapp;
 
+import com.thoughtworks.mingle.Logger;
+import com.thoughtworks.mingle.MingleProperties;
 import net.spy.memcached.MemcachedClient;
 
 import java.io.IOException;
@@ -24,14 +26,32 @@ import java.io.IOException;
 import static com.thoughtworks.mingle.util.MingleConfigUtils.memcachedInetAddresses;
 
 public class RouterFactory {
+    private static Logger logger = new Logger();
+
     public static Router create(boolean multiAppRoutingEnabled,
                                 String multiAppRoutingConfig,
                                 String memcachedHosts, String memcachedPorts) throws IOException {
-        return multiAppRoutingEnabled ?
-                new DynamicRouter(
-                        new RouteConfigClient(multiAppRoutingConfig,
-                                new MemcachedClient(memcachedInetAddresses(memcachedHosts, memcachedPorts).get(0)))
-                ) :
-                new StaticRouter();
+        if (!multiAppRoutingEnabled) {
+            return new StaticRouter();
+        }
+        RouteConfigClient routeConfigClient = new RouteConfigClient(multiAppRoutingConfig,
+                new MemcachedClient(memcachedInetAddresses(memcachedHosts, memcachedPorts).get(0)));
+        routeConfigClient.startRefreshing(refreshIntervalMillis());
+        routeConfigClient.watchForChanges();
+        return new DynamicRouter(routeConfigClient);
+    }
+
+    static long refreshIntervalMillis() {
+        String interval = System.getProperty(MingleProperties.MULTI_APP_ROUTING_REFRESH_INTERVAL);
+        if (interval == null || interval.trim().isEmpty()) {
+            return RouteConfigClient.DEFAULT_REFRESH_INTERVAL_MILLIS;
+        }
+        try {
+            return Math.max(100, Long.parseLong(interval.trim()));
+        } catch (NumberFormatException e) {
+            logger.info("MultiAppRouting: ignoring invalid " + MingleProperties.MULTI_APP_ROUTING_REFRESH_INTERVAL + " '" + interval
+                    + "', using " + RouteConfigClient.DEFAULT_REFRESH_INTERVAL_MILLIS + "ms");
+            return RouteConfigClient.DEFAULT_REFRESH_INTERVAL_MILLIS;
+        }
     }
 }
@@ -0,0 +1,41 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+/**
+ * Lanes competing for JRuby runtime access. The order is the admission priority: when shared
+ * runtimes free up, waiting borrowers of an earlier lane are served before those of a later one.
+ */
+public enum BorrowerClass {
+    INTERACTIVE,
+    ADMIN,
+    API,
+    BACKGROUND;
+
+    public static BorrowerClass forRequest(String scriptName, String requestURI) {
+        String apiPrefix = (scriptName == null ? "" : scriptName) + "/api/";
+        if (requestURI != null && requestURI.startsWith(apiPrefix)) {
+            return API;
+        }
+        return INTERACTIVE;
+    }
+
+    public String propertyKey(String setting) {
+        return "mingle.pool." + name().toLowerCase() + "." + setting;
+    }
+}
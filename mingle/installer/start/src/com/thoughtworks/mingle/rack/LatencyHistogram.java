@@ -0,0 +1,109 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed millisecond buckets. Recording only increments striped counters, so it
+ * neither locks nor allocates on the borrow/return path; percentiles are reported as the upper bound of
+ * the bucket they fall into.
+ */
+public class LatencyHistogram {
+    private static final long[] BUCKET_UPPER_BOUNDS = {
+            1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, Long.MAX_VALUE
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_UPPER_BOUNDS.length];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long millis) {
+        buckets[bucketFor(millis)].increment();
+        total.add(millis);
+        max.accumulate(millis);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long mean() {
+        long count = count();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /** @param percentile between 0 and 100 */
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS[i], max());
+            }
+        }
+        return max();
+    }
+
+    public Map<String, Long> summary() {
+        Map<String, Long> summary = new LinkedHashMap<String, Long>();
+        summary.put("count", count());
+        summary.put("mean", mean());
+        summary.put("p50", percentile(50));
+        summary.put("p95", percentile(95));
+        summary.put("p99", percentile(99));
+        summary.put("max", max());
+        return summary;
+    }
+
+    private static int bucketFor(long millis) {
+        int low = 0;
+        int high = BUCKET_UPPER_BOUNDS.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (millis <= BUCKET_UPPER_BOUNDS[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
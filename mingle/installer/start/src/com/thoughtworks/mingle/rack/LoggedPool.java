@@ -26,9 +26,15 @@ public interface LoggedPool extends RackApplicationFactory {
 
     RackApplication borrowApplication(String borrower) throws Exception;
 
+    RackApplication borrowApplication(String borrower, BorrowerClass borrowerClass) throws Exception;
+
     Map<Integer, String> borrowers();
 
     PoolStatus getStatus();
 
     boolean isReady();
+
+    void addCapacityListener(PoolCapacityListener listener);
+
+    void removeCapacityListener(PoolCapacityListener listener);
 }
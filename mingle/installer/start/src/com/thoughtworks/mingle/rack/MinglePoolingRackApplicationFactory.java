@@ -18,6 +18,8 @@
 package com.thoughtworks.mingle.rack;
 
 import com.thoughtworks.mingle.MingleProperties;
+import com.thoughtworks.mingle.PoolAdmissionRejectedException;
+import com.thoughtworks.mingle.util.MBeans;
 import org.jruby.rack.PoolingRackApplicationFactory;
 import org.jruby.rack.RackApplication;
 import org.jruby.rack.RackApplicationFactory;
@@ -25,37 +27,81 @@ import org.jruby.rack.RackInitializationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.thoughtworks.mingle.MingleProperties.DEFAULT_INIT_RUNTIMES_LIMIT;
 
 public class MinglePoolingRackApplicationFactory extends PoolingRackApplicationFactory implements LoggedPool {
     /** borrower timeout is 30 sec */
     public static final float BORROWER_TIMEOUT = 30.0f;
+    public static final String MBEAN_NAME = MBeans.name("RuntimePool");
+    private static final long SNAPSHOT_LOG_INTERVAL_MILLIS = 60 * 1000;
 
     private static Logger logger = LoggerFactory.getLogger("com.thoughtworks.mingle.pool");
-    private Map<Integer, String> borrowers = new ConcurrentHashMap<Integer, String>();
     private AtomicBoolean ready = new AtomicBoolean(false);
+    private RuntimeScheduler scheduler;
+    private BorrowerSlot[] slots;
+    private AtomicInteger active = new AtomicInteger(0);
+    private AtomicLong lastSnapshotLoggedAt = new AtomicLong(0);
+    private RuntimePoolMetrics metrics;
+    private volatile PoolStatus status;
+    private volatile PoolCapacityListener[] capacityListeners = new PoolCapacityListener[0];
+    private AtomicInteger nextListener = new AtomicInteger(0);
 
     public MinglePoolingRackApplicationFactory(RackApplicationFactory delegate) {
         super(delegate);
         configureSystemProperties();
+        int maxRuntimes = MingleProperties.jrubyMaxRuntimes(System.getProperties());
+        scheduler = RuntimeScheduler.fromSystemProperties(maxRuntimes);
+        slots = new BorrowerSlot[maxRuntimes];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new BorrowerSlot();
+        }
+        metrics = new RuntimePoolMetrics(this);
+        MBeans.register(metrics, MBEAN_NAME);
     }
 
     public RackApplication borrowApplication(String borrower) throws Exception {
+        return borrowApplication(borrower, BorrowerClass.INTERACTIVE);
+    }
+
+    public RackApplication borrowApplication(String borrower, BorrowerClass borrowerClass) throws Exception {
         if (logger.isDebugEnabled()) {
             logger.debug("Started borrowing a Runtime. " + borrower);
         }
 
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
 
-        RackApplication rackApplication = this.getApplication();
-        borrowers.put(rackApplication.hashCode(), borrower);
+        try {
+            scheduler.admit(borrowerClass, borrower);
+        } catch (PoolAdmissionRejectedException e) {
+            metrics.recordRejection(borrowerClass);
+            throw e;
+        }
+        RackApplication rackApplication;
+        try {
+            rackApplication = this.getApplication();
+        } catch (Exception e) {
+            scheduler.release(borrowerClass);
+            throw e;
+        }
+
+        long borrowedAt = System.nanoTime();
+        track(rackApplication, borrower, borrowerClass, borrowedAt);
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(borrowedAt - start);
+        metrics.recordBorrow(borrowerClass, waitMillis);
 
-        logStatistics(borrower, start, getStatus());
+        logStatistics(borrower, waitMillis);
 
         return rackApplication;
     }
@@ -69,22 +115,48 @@ public class MinglePoolingRackApplicationFactory extends PoolingRackApplicationF
 
     @Override
     public void finishedWithApplication(RackApplication app) {
+        if (app == null) {
+            return;
+        }
         try {
             super.finishedWithApplication(app);
         } finally {
-            borrowers.remove(app.hashCode());
+            untrack(app);
             logger.debug("Finished borrowing a Runtime.");
         }
     }
 
+    @Override
+    public void destroy() {
+        try {
+            MBeans.unregister(MBEAN_NAME);
+        } finally {
+            super.destroy();
+        }
+    }
+
+    /** snapshot of current borrowers keyed by pool slot */
     public Map<Integer, String> borrowers() {
-        return Collections.unmodifiableMap(borrowers);
+        Map<Integer, String> result = new HashMap<Integer, String>();
+        for (int i = 0; i < slots.length; i++) {
+            String borrower = slots[i].borrower;
+            if (slots[i].application.get() != null && borrower != null) {
+                result.put(i, borrower);
+            }
+        }
+        return Collections.unmodifiableMap(result);
     }
 
+    /** the same status object is handed out until the pool size or the number of borrowed runtimes changes */
     public PoolStatus getStatus() {
-        int activeThreads = borrowers().size();
-        int idleThreads = getMaximumSize() - activeThreads;
-        return new PoolStatus(getMaximumSize(), getMaximumSize(), idleThreads, idleThreads);
+        int maxSize = maximumSize();
+        int idleThreads = maxSize - active.get();
+        PoolStatus current = status;
+        if (current == null || current.getMaxApplications() != maxSize || current.getIdleApplications() != idleThreads) {
+            current = new PoolStatus(maxSize, maxSize, idleThreads, idleThreads, metrics);
+            status = current;
+        }
+        return current;
     }
 
     @Override
@@ -105,23 +177,118 @@ public class MinglePoolingRackApplicationFactory extends PoolingRackApplicationF
         setPropertyDefault("jruby.runtime.acquire.timeout", BORROWER_TIMEOUT);
     }
 
-    private void logStatistics(String borrower, long start, PoolStatus status) {
-        if (status.getIdleApplications() == 0 && status.getMaxApplications() > 1) {
-            logger.info("Maximum thread limit: " + status.getMaxApplications() + " was hit trying to acquire [" + borrower + "]!");
-            StringBuilder buf = new StringBuilder();
-            buf.append("Current threadpool snapshot:\n");
-            for (Integer borrowerId: borrowers.keySet()) {
-                buf.append(String.valueOf(borrowerId) + ": " + borrowers.get(borrowerId) + "\n");
+    private void track(RackApplication application, String borrower, BorrowerClass borrowerClass, long borrowedAt) {
+        for (BorrowerSlot slot : slots) {
+            if (slot.application.get() == null && slot.application.compareAndSet(null, application)) {
+                slot.borrower = borrower;
+                slot.borrowerClass = borrowerClass;
+                slot.borrowedAt = borrowedAt;
+                active.incrementAndGet();
+                return;
             }
-            logger.info(buf.toString());
         }
+        // the scheduler never admits more borrowers than there are slots
+        scheduler.release(borrowerClass);
+        logger.warn("No free slot to track [" + borrower + "], it will not be reported as a borrower");
+    }
 
-        long split = System.currentTimeMillis() - start;
-        if (split > 1000) {
-            logger.info("Wait time for borrowing a Runtime exceeded " + split + " msecs. This time needs to be added to '" + borrower + "'.");
-        } else if (logger.isDebugEnabled() && split > 10) {
-            logger.debug("Wait time for borrowing a Runtime exceeded " + split + " msecs.");
+    private void untrack(RackApplication application) {
+        for (BorrowerSlot slot : slots) {
+            if (slot.application.get() == application) {
+                BorrowerClass borrowerClass = slot.borrowerClass;
+                long holdMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - slot.borrowedAt);
+                slot.borrower = null;
+                slot.borrowerClass = null;
+                slot.application.set(null);
+                active.decrementAndGet();
+                scheduler.release(borrowerClass);
+                metrics.recordReturn(borrowerClass, holdMillis);
+                publishCapacity();
+                return;
+            }
         }
     }
 
+    public synchronized void addCapacityListener(PoolCapacityListener listener) {
+        PoolCapacityListener[] listeners = Arrays.copyOf(capacityListeners, capacityListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        capacityListeners = listeners;
+    }
+
+    public synchronized void removeCapacityListener(PoolCapacityListener listener) {
+        List<PoolCapacityListener> listeners = new ArrayList<PoolCapacityListener>(Arrays.asList(capacityListeners));
+        listeners.remove(listener);
+        capacityListeners = listeners.toArray(new PoolCapacityListener[listeners.size()]);
+    }
+
+    /**
+     * Offers freed runtimes to listeners, starting with a different listener each time so that the same
+     * task is not always first in line, and stopping once every idle runtime has been claimed.
+     */
+    private void publishCapacity() {
+        PoolCapacityListener[] listeners = capacityListeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        int idle = maximumSize() - active.get();
+        int start = nextListener.getAndIncrement();
+        for (int i = 0; i < listeners.length && idle > 0; i++) {
+            PoolCapacityListener listener = listeners[Math.abs((start + i) % listeners.length)];
+            try {
+                if (listener.capacityAvailable(idle)) {
+                    idle--;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Pool capacity listener failed", e);
+            }
+        }
+    }
+
+    int maximumSize() {
+        Integer maximumSize = getMaximumSize();
+        return maximumSize == null ? slots.length : maximumSize;
+    }
+
+    int activeApplications() {
+        return active.get();
+    }
+
+    private void logStatistics(String borrower, long waitMillis) {
+        int maxSize = maximumSize();
+        if (active.get() >= maxSize && maxSize > 1) {
+            logSnapshot(borrower, maxSize);
+        }
+
+        if (waitMillis > 1000) {
+            logger.info("Wait time for borrowing a Runtime exceeded " + waitMillis + " msecs. This time needs to be added to '" + borrower + "'.");
+        } else if (logger.isDebugEnabled() && waitMillis > 10) {
+            logger.debug("Wait time for borrowing a Runtime exceeded " + waitMillis + " msecs.");
+        }
+    }
+
+    /** rate limited, a pool that stays exhausted would otherwise log (and build) one per borrow */
+    private void logSnapshot(String borrower, int maxSize) {
+        long now = System.currentTimeMillis();
+        long last = lastSnapshotLoggedAt.get();
+        if (now - last < SNAPSHOT_LOG_INTERVAL_MILLIS || !lastSnapshotLoggedAt.compareAndSet(last, now)) {
+            return;
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append("Maximum thread limit: ").append(maxSize).append(" was hit trying to acquire [").append(borrower).append("]!\n");
+        buf.append("Current threadpool snapshot:\n");
+        Map<Integer, String> borrowers = borrowers();
+        for (Integer borrowerId : borrowers.keySet()) {
+            buf.append(borrowerId).append(": ").append(borrowers.get(borrowerId)).append("\n");
+        }
+        buf.append("Lanes: ").append(scheduler.describeLanes());
+        logger.info(buf.toString());
+    }
+
+    /** Tracks who holds a runtime; slots are reused so borrowing and returning do not allocate */
+    private static class BorrowerSlot {
+        final AtomicReference<RackApplication> application = new AtomicReference<RackApplication>();
+        volatile String borrower;
+        volatile BorrowerClass borrowerClass;
+        volatile long borrowedAt;
+    }
 }
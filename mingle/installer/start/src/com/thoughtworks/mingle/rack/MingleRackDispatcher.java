@@ -17,6 +17,7 @@
 
 package com.thoughtworks.mingle.rack;
 
+import com.thoughtworks.mingle.PoolAdmissionRejectedException;
 import org.jruby.rack.DefaultRackDispatcher;
 import org.jruby.rack.RackApplication;
 import org.jruby.rack.RackContext;
@@ -25,11 +26,13 @@ import org.jruby.rack.RackResponseEnvironment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 /** changed to borrow object with reason */
 public class MingleRackDispatcher extends DefaultRackDispatcher {
 
+    private static final int RETRY_AFTER_SECONDS = 5;
     private static Logger logger = LoggerFactory.getLogger("com.thoughtworks.mingle.servlet");
 
     public MingleRackDispatcher(RackContext context) {
@@ -44,8 +47,11 @@ public class MingleRackDispatcher extends DefaultRackDispatcher {
                 stats = new Benchmark(request.getRequestURI()).start();
             }
 
-            app = ((LoggedPool) getRackFactory()).borrowApplication("Web request: " + request.getRequestURI());
+            BorrowerClass borrowerClass = BorrowerClass.forRequest(request.getScriptName(), request.getRequestURI());
+            app = ((LoggedPool) getRackFactory()).borrowApplication("Web request: " + request.getRequestURI(), borrowerClass);
             app.call(request).respond(response);
+        } catch (PoolAdmissionRejectedException e) {
+            serviceUnavailable(response);
         } catch (Exception e) {
             handleException(e, request, response);
         } finally {
@@ -59,4 +65,14 @@ public class MingleRackDispatcher extends DefaultRackDispatcher {
             }
         }
     }
+
+    private void serviceUnavailable(RackResponseEnvironment response) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        if (response instanceof HttpServletResponse) {
+            ((HttpServletResponse) response).setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        }
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
 }
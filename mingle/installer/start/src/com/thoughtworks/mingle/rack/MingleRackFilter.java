@@ -17,7 +17,10 @@
 
 package com.thoughtworks.mingle.rack;
 
+import com.thoughtworks.mingle.AlsoViewingServlet;
 import com.thoughtworks.mingle.DataDirPublicFileServlet;
+import com.thoughtworks.mingle.PublicFileIndex;
+import com.thoughtworks.mingle.RailsPathHelper;
 import com.thoughtworks.mingle.StaticFilesServlet;
 import org.jruby.rack.RackDispatcher;
 import org.jruby.rack.RackEnvironment;
@@ -35,17 +38,27 @@ import java.io.IOException;
 
 public class MingleRackFilter extends RackFilter {
     protected RackDispatcher dispatcher;
+    private PublicFileIndex publicFiles;
 
     public void init(FilterConfig config) throws ServletException {
         super.init(config);
         dispatcher = new MingleRackDispatcher(getContext());
+        publicFiles = PublicFileIndex.of(new RailsPathHelper(config.getServletContext()));
     }
 
     @Override
     protected boolean isDoDispatch(RequestCapture requestCapture, ResponseCapture responseCapture,
                                    FilterChain filterChain, RackEnvironment rackEnvironment)
             throws IOException, ServletException {
-        String path = ((HttpServletRequest) requestCapture.getRequest()).getPathInfo();
+        HttpServletRequest request = (HttpServletRequest) requestCapture.getRequest();
+        if (AlsoViewingServlet.isAlsoViewingRequest(request.getServletPath())) {
+            // long polls are suspended, so they must not be buffered by the rack response capture
+            filterChain.doFilter(request, responseCapture.getResponse());
+
+            return false;
+        }
+
+        String path = request.getPathInfo();
         if (null != path) {
             if (DataDirPublicFileServlet.isDataDirPublicFileRequest(path)) {
                 RequestDispatcher dataDirDispatcher = ((ServletRackContext) getContext()).getNamedDispatcher("mingleFiles");
@@ -54,7 +67,8 @@ public class MingleRackFilter extends RackFilter {
                 return false;
             }
 
-            if (StaticFilesServlet.isStaticFile(path)) {
+            // files under public are served directly; asset paths missing from it still get the static 404
+            if ((publicFiles != null && publicFiles.isFile(path)) || StaticFilesServlet.isStaticFile(path)) {
                 RequestDispatcher assetDispatcher = ((ServletRackContext) getContext()).getNamedDispatcher("StaticContent");
                 assetDispatcher.forward(requestCapture.getRequest(), responseCapture.getResponse());
 
@@ -0,0 +1,30 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+/** Notified by the runtime pool whenever a runtime is returned */
+public interface PoolCapacityListener {
+
+    /**
+     * Called on the returning borrower's thread, so implementations must not block.
+     *
+     * @return true if the listener is going to use the freed capacity, which stops the pool from
+     * offering the same runtime to more listeners
+     */
+    boolean capacityAvailable(int idleApplications);
+}
@@ -24,8 +24,14 @@ public class PoolStatus {
     private int idleApps;
     private int activeApps;
     private int poolSize;
+    private RuntimePoolMetrics metrics;
 
     public PoolStatus(Integer minApps, Integer maxApps, int idleApps, int availablePermits) {
+        this(minApps, maxApps, idleApps, availablePermits, null);
+    }
+
+    public PoolStatus(Integer minApps, Integer maxApps, int idleApps, int availablePermits, RuntimePoolMetrics metrics) {
+        this.metrics = metrics;
         this.minApps = minApps == null ? 0 : minApps;
         this.maxApps = maxApps == null ? 0 : maxApps;
         this.idleApps = idleApps;
@@ -52,4 +58,9 @@ public class PoolStatus {
     public int getPoolSize() {
         return this.poolSize;
     }
+
+    /** live queue-wait and hold-time telemetry, null when the pool does not record any */
+    public RuntimePoolMetrics getMetrics() {
+        return this.metrics;
+    }
 }
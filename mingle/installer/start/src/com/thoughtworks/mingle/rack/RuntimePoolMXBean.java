@@ -0,0 +1,45 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+import java.util.Map;
+
+/** JMX view of the JRuby runtime pool; maps are keyed by borrower class */
+public interface RuntimePoolMXBean {
+    int getMaxApplications();
+
+    int getActiveApplications();
+
+    int getIdleApplications();
+
+    Map<String, Long> getBorrowCounts();
+
+    Map<String, Long> getRejectionCounts();
+
+    Map<String, Long> getQueueWaitP50Millis();
+
+    Map<String, Long> getQueueWaitP95Millis();
+
+    Map<String, Long> getQueueWaitP99Millis();
+
+    Map<String, Long> getHoldTimeP50Millis();
+
+    Map<String, Long> getHoldTimeP95Millis();
+
+    Map<String, Long> getHoldTimeP99Millis();
+}
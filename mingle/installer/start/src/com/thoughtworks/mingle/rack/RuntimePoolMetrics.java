@@ -0,0 +1,154 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Queue-wait and hold-time telemetry of the JRuby runtime pool, recorded per borrower class */
+public class RuntimePoolMetrics implements RuntimePoolMXBean {
+    private final MinglePoolingRackApplicationFactory pool;
+    private final LatencyHistogram[] queueWait;
+    private final LatencyHistogram[] holdTime;
+    private final LongAdder[] borrows;
+    private final LongAdder[] rejections;
+
+    public RuntimePoolMetrics(MinglePoolingRackApplicationFactory pool) {
+        int lanes = BorrowerClass.values().length;
+        this.pool = pool;
+        this.queueWait = new LatencyHistogram[lanes];
+        this.holdTime = new LatencyHistogram[lanes];
+        this.borrows = new LongAdder[lanes];
+        this.rejections = new LongAdder[lanes];
+        for (int i = 0; i < lanes; i++) {
+            queueWait[i] = new LatencyHistogram();
+            holdTime[i] = new LatencyHistogram();
+            borrows[i] = new LongAdder();
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    public void recordBorrow(BorrowerClass borrowerClass, long waitMillis) {
+        borrows[borrowerClass.ordinal()].increment();
+        queueWait[borrowerClass.ordinal()].record(waitMillis);
+    }
+
+    public void recordReturn(BorrowerClass borrowerClass, long holdMillis) {
+        holdTime[borrowerClass.ordinal()].record(holdMillis);
+    }
+
+    public void recordRejection(BorrowerClass borrowerClass) {
+        rejections[borrowerClass.ordinal()].increment();
+    }
+
+    public LatencyHistogram queueWait(BorrowerClass borrowerClass) {
+        return queueWait[borrowerClass.ordinal()];
+    }
+
+    public LatencyHistogram holdTime(BorrowerClass borrowerClass) {
+        return holdTime[borrowerClass.ordinal()];
+    }
+
+    /** snapshot suitable for JSON rendering */
+    public Map<String, Object> toMap() {
+        int max = pool.maximumSize();
+        int active = pool.activeApplications();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("maxApplications", max);
+        result.put("activeApplications", active);
+        result.put("idleApplications", max - active);
+
+        Map<String, Object> lanes = new LinkedHashMap<String, Object>();
+        for (BorrowerClass borrowerClass : BorrowerClass.values()) {
+            int i = borrowerClass.ordinal();
+            Map<String, Object> lane = new LinkedHashMap<String, Object>();
+            lane.put("borrows", borrows[i].sum());
+            lane.put("rejections", rejections[i].sum());
+            lane.put("queueWaitMillis", queueWait[i].summary());
+            lane.put("holdTimeMillis", holdTime[i].summary());
+            lanes.put(key(borrowerClass), lane);
+        }
+        result.put("borrowerClasses", lanes);
+        return result;
+    }
+
+    public int getMaxApplications() {
+        return pool.maximumSize();
+    }
+
+    public int getActiveApplications() {
+        return pool.activeApplications();
+    }
+
+    public int getIdleApplications() {
+        return pool.maximumSize() - pool.activeApplications();
+    }
+
+    public Map<String, Long> getBorrowCounts() {
+        return sums(borrows);
+    }
+
+    public Map<String, Long> getRejectionCounts() {
+        return sums(rejections);
+    }
+
+    public Map<String, Long> getQueueWaitP50Millis() {
+        return percentiles(queueWait, 50);
+    }
+
+    public Map<String, Long> getQueueWaitP95Millis() {
+        return percentiles(queueWait, 95);
+    }
+
+    public Map<String, Long> getQueueWaitP99Millis() {
+        return percentiles(queueWait, 99);
+    }
+
+    public Map<String, Long> getHoldTimeP50Millis() {
+        return percentiles(holdTime, 50);
+    }
+
+    public Map<String, Long> getHoldTimeP95Millis() {
+        return percentiles(holdTime, 95);
+    }
+
+    public Map<String, Long> getHoldTimeP99Millis() {
+        return percentiles(holdTime, 99);
+    }
+
+    private static Map<String, Long> sums(LongAdder[] counters) {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (BorrowerClass borrowerClass : BorrowerClass.values()) {
+            result.put(key(borrowerClass), counters[borrowerClass.ordinal()].sum());
+        }
+        return result;
+    }
+
+    private static Map<String, Long> percentiles(LatencyHistogram[] histograms, double percentile) {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (BorrowerClass borrowerClass : BorrowerClass.values()) {
+            result.put(key(borrowerClass), histograms[borrowerClass.ordinal()].percentile(percentile));
+        }
+        return result;
+    }
+
+    private static String key(BorrowerClass borrowerClass) {
+        return borrowerClass.name().toLowerCase();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+import com.thoughtworks.mingle.PoolAdmissionRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which borrower may take a JRuby runtime next. Every lane can reserve a minimum number of
+ * runtimes for itself; the remaining runtimes are shared and go to waiting borrowers in lane priority
+ * order. A borrower that finds its lane queue full, or that is not admitted before its lane's maximum
+ * wait, is rejected so that callers can answer 503 instead of holding a request thread on the pool.
+ *
+ * Per lane settings (system properties, e.g. mingle.pool.background.reserved):
+ *   reserved - runtimes only this lane may use, default 0
+ *   maxWait  - seconds a borrower waits for admission before being rejected
+ *   maxQueue - borrowers allowed to wait at once before new ones are rejected immediately, default pool size
+ */
+public class RuntimeScheduler {
+    public static final int DEFAULT_FOREGROUND_MAX_WAIT_SECONDS = 10;
+
+    private static Logger logger = LoggerFactory.getLogger("com.thoughtworks.mingle.pool");
+
+    private final int capacity;
+    private final int shared;
+    private final int[] reserved;
+    private final long[] maxWaitMillis;
+    private final int[] maxQueued;
+
+    private final int[] active;
+    private final int[] waiting;
+
+    public RuntimeScheduler(int capacity, int[] reserved, long[] maxWaitMillis, int[] maxQueued) {
+        int lanes = BorrowerClass.values().length;
+        this.capacity = capacity;
+        this.reserved = sanitizeReserved(capacity, reserved);
+        this.shared = capacity - sum(this.reserved);
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxQueued = maxQueued;
+        this.active = new int[lanes];
+        this.waiting = new int[lanes];
+    }
+
+    public static RuntimeScheduler fromSystemProperties(int capacity) {
+        BorrowerClass[] lanes = BorrowerClass.values();
+        int[] reserved = new int[lanes.length];
+        long[] maxWaitMillis = new long[lanes.length];
+        int[] maxQueued = new int[lanes.length];
+
+        for (BorrowerClass lane : lanes) {
+            int i = lane.ordinal();
+            reserved[i] = Math.max(0, intProperty(lane.propertyKey("reserved"), 0));
+            maxWaitMillis[i] = 1000L * Math.max(0, intProperty(lane.propertyKey("maxWait"), defaultMaxWaitSeconds(lane)));
+            maxQueued[i] = Math.max(0, intProperty(lane.propertyKey("maxQueue"), capacity));
+        }
+
+        RuntimeScheduler scheduler = new RuntimeScheduler(capacity, reserved, maxWaitMillis, maxQueued);
+        logger.info("JRuby runtime scheduler lanes: " + scheduler.describeLanes());
+        return scheduler;
+    }
+
+    /**
+     * Blocks until the borrower may take a runtime from the pool. Every successful call must be
+     * matched with a call to {@link #release(BorrowerClass)}.
+     */
+    public synchronized void admit(BorrowerClass lane, String borrower) throws PoolAdmissionRejectedException, InterruptedException {
+        int i = lane.ordinal();
+        if (canAdmit(i)) {
+            active[i]++;
+            return;
+        }
+
+        if (waiting[i] >= maxQueued[i]) {
+            throw rejection(lane, borrower, waiting[i] + " borrowers already queued");
+        }
+
+        long deadline = System.currentTimeMillis() + maxWaitMillis[i];
+        waiting[i]++;
+        try {
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw rejection(lane, borrower, "not admitted within " + maxWaitMillis[i] + " msecs");
+                }
+                wait(remaining);
+                if (canAdmit(i)) {
+                    active[i]++;
+                    return;
+                }
+            }
+        } finally {
+            waiting[i]--;
+            // a borrower giving up may unblock lower priority lanes
+            notifyAll();
+        }
+    }
+
+    public synchronized void release(BorrowerClass lane) {
+        int i = lane.ordinal();
+        if (active[i] > 0) {
+            active[i]--;
+        }
+        notifyAll();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int active(BorrowerClass lane) {
+        return active[lane.ordinal()];
+    }
+
+    public synchronized int waiting(BorrowerClass lane) {
+        return waiting[lane.ordinal()];
+    }
+
+    public synchronized String describeLanes() {
+        StringBuilder buf = new StringBuilder();
+        for (BorrowerClass lane : BorrowerClass.values()) {
+            int i = lane.ordinal();
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            buf.append(lane).append("(active=").append(active[i])
+                    .append(", waiting=").append(waiting[i])
+                    .append(", reserved=").append(reserved[i])
+                    .append(", maxWait=").append(maxWaitMillis[i]).append("ms")
+                    .append(", maxQueue=").append(maxQueued[i]).append(")");
+        }
+        return buf.append(", shared=").append(shared).toString();
+    }
+
+    private boolean canAdmit(int lane) {
+        if (active[lane] < reserved[lane]) {
+            return true;
+        }
+        if (sharedInUse() >= shared) {
+            return false;
+        }
+        for (int higher = 0; higher < lane; higher++) {
+            if (waiting[higher] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int sharedInUse() {
+        int inUse = 0;
+        for (int i = 0; i < active.length; i++) {
+            inUse += Math.max(0, active[i] - reserved[i]);
+        }
+        return inUse;
+    }
+
+    private PoolAdmissionRejectedException rejection(BorrowerClass lane, String borrower, String reason) {
+        logger.info("Rejected [" + borrower + "] in lane " + lane + ": " + reason + ". " + describeLanes());
+        return new PoolAdmissionRejectedException("No JRuby runtime available for " + lane + " borrower: " + reason);
+    }
+
+    private static int[] sanitizeReserved(int capacity, int[] reserved) {
+        if (sum(reserved) > capacity) {
+            logger.warn("Reserved runtimes (" + sum(reserved) + ") exceed the pool size (" + capacity + "), ignoring lane reservations");
+            return new int[reserved.length];
+        }
+        return reserved;
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static int defaultMaxWaitSeconds(BorrowerClass lane) {
+        switch (lane) {
+            case INTERACTIVE:
+            case API:
+                return DEFAULT_FOREGROUND_MAX_WAIT_SECONDS;
+            default:
+                return (int) MinglePoolingRackApplicationFactory.BORROWER_TIMEOUT;
+        }
+    }
+
+    private static int intProperty(String property, int defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || "".equals(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error("Ignoring incorrect system property '" + property + "=" + value + "', defaulting to " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -21,13 +21,19 @@ import com.thimbleware.jmemcached.Cache;
 import com.thimbleware.jmemcached.CacheStorage;
 import com.thimbleware.jmemcached.LRUCacheStorageDelegate;
 import com.thimbleware.jmemcached.MemCacheDaemon;
+import com.thoughtworks.mingle.MingleProperties;
+import net.spy.memcached.MemcachedClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static com.thoughtworks.mingle.util.MingleConfigUtils.memcachedInetAddresses;
 
 public class Memcached implements Service {
+    private static MemcachedClient client;
     private MemCacheDaemon cachedServer;
     final Logger logger = LoggerFactory.getLogger("Memcached");
 
@@ -64,6 +70,26 @@ public class Memcached implements Service {
         logger.info("stopped");
     }
 
+    /**
+     * The client shared by everything on the Java side that talks to memcached, connected to the servers
+     * configured by mingle.memcachedHost and mingle.memcachedPort. It is shut down with the other services.
+     */
+    public static synchronized MemcachedClient client() throws IOException {
+        if (client == null) {
+            client = new MemcachedClient(memcachedInetAddresses(
+                    System.getProperty(MingleProperties.MEMCACHED_HOST_KEY),
+                    System.getProperty(MingleProperties.MEMCACHED_PORT_KEY)));
+        }
+        return client;
+    }
+
+    public static synchronized void shutdownClient() {
+        if (client != null) {
+            client.shutdown(2, TimeUnit.SECONDS);
+            client = null;
+        }
+    }
+
     private void shutdownOnError(Throwable e, String message) {
         logger.error(message, e);
         new Thread(new Runnable() {
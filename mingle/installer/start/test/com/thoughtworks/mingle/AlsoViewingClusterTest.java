@@ -0,0 +1,151 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle;
+
+import com.google.gson.Gson;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
+import net.spy.memcached.MemcachedClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class AlsoViewingClusterTest {
+    private MemcachedClient client;
+    private AlsoViewing alsoViewing;
+    private AlsoViewingCluster cluster;
+    private Map<String, Object> memcached;
+    private long now = 1000000;
+
+    private AlsoViewing.Clock clock = new AlsoViewing.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        client = mock(MemcachedClient.class);
+        memcached = new HashMap<String, Object>();
+        memcached.put("also_viewing/nodes", "me,other");
+        memcached.put("also_viewing/node/other", "{}");
+        when(client.getBulk(anyCollectionOf(String.class))).thenReturn(memcached);
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        cluster = new AlsoViewingCluster(client, alsoViewing, clock, null, "me", 5);
+        alsoViewing.setRemoteVisitors(cluster);
+    }
+
+    @Test
+    public void should_publish_local_visitors_once_per_refresh() {
+        alsoViewing.add("url", "foo");
+        cluster.refresh();
+
+        verify(client).set("also_viewing/node/me", 14, "{\"url\":[\"foo\"]}");
+    }
+
+    @Test
+    public void should_not_write_unchanged_visitors_again_until_they_are_about_to_expire() {
+        alsoViewing.add("url", "foo");
+        cluster.refresh();
+        cluster.refresh();
+        now += 8000;
+        alsoViewing.add("url", "foo");
+        cluster.refresh();
+
+        verify(client, times(2)).set(eq("also_viewing/node/me"), eq(14), anyString());
+    }
+
+    @Test
+    public void should_leave_out_pages_that_do_not_fit_into_one_item() {
+        alsoViewing = new AlsoViewing(5, 0, 16 * 400, clock);
+        cluster = new AlsoViewingCluster(client, alsoViewing, clock, null, "me", 5);
+        char[] name = new char[10000];
+        Arrays.fill(name, 'u');
+        for (int i = 0; i < 200; i++) {
+            alsoViewing.add("url" + i, new String(name));
+        }
+        cluster.refresh();
+
+        ArgumentCaptor<Object> snapshot = ArgumentCaptor.forClass(Object.class);
+        verify(client).set(eq("also_viewing/node/me"), eq(14), snapshot.capture());
+        String json = (String) snapshot.getValue();
+        assertTrue(json.length() <= AlsoViewingCluster.MAX_SNAPSHOT_BYTES);
+        int pages = new Gson().fromJson(json, Map.class).size();
+        assertTrue(pages > 0 && pages < 200);
+    }
+
+    @Test
+    public void should_show_visitors_of_other_nodes_and_announce_the_change() {
+        final Map<String, Integer> changes = new HashMap<String, Integer>();
+        alsoViewing.addListener(new AlsoViewing.Listener() {
+            @Override
+            public void changed(String page) {
+                changes.put(page, changes.containsKey(page) ? changes.get(page) + 1 : 1);
+            }
+
+            @Override
+            public void sweeping() {
+            }
+        });
+        memcached.put("also_viewing/node/other", "{\"url/edit\":[\"bar\"],\"url\":[\"baz\",\"currentUser\"]}");
+
+        cluster.refresh();
+        cluster.refresh();
+
+        assertEquals(Collections.singletonList("bar"), alsoViewing.extractActiveUsersFor("url", "currentUser").get("editors"));
+        assertEquals(Collections.singletonList("baz"), alsoViewing.extractActiveUsersFor("url", "currentUser").get("viewers"));
+        assertEquals(Integer.valueOf(1), changes.get("url/edit"));
+        assertTrue(alsoViewing.version("url") > 0);
+    }
+
+    @Test
+    public void should_drop_nodes_whose_visitors_expired() {
+        CASValue<Object> nodes = new CASValue<Object>(7, "me,other");
+        when(client.gets("also_viewing/nodes")).thenReturn(nodes);
+        when(client.cas("also_viewing/nodes", 7, "me")).thenReturn(CASResponse.OK);
+        cluster.refresh();
+
+        memcached.remove("also_viewing/node/other");
+        cluster.refresh();
+
+        verify(client).cas("also_viewing/nodes", 7, "me");
+    }
+
+    @Test
+    public void should_forget_visitors_of_other_nodes_when_memcached_cannot_be_reached() {
+        memcached.put("also_viewing/node/other", "{\"url\":[\"bar\"]}");
+        cluster.refresh();
+        cluster.refresh();
+        assertEquals(1, cluster.visitorsOf("url").size());
+
+        now += 15000;
+        assertEquals(0, cluster.visitorsOf("url").size());
+    }
+}
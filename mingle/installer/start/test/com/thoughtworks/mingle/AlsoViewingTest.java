@@ -21,14 +21,18 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class AlsoViewingTest {
     private AlsoViewing alsoViewing;
+    private ManualClock clock = new ManualClock();
 
     @Before
     public void setup() {
@@ -160,4 +164,133 @@ public class AlsoViewingTest {
             fail("Should not throw exception when url is null");
         }
     }
+
+    @Test
+    public void should_treat_query_string_and_trailing_slash_as_the_same_page() {
+        alsoViewing.add("/projects/foo/cards/1/?tab=history", "user");
+        assertEquals(1, alsoViewing.extractActiveUsersFor("/projects/foo/cards/1", "currentUser").get("viewers").size());
+        assertEquals("/", AlsoViewing.normalize("/"));
+    }
+
+    @Test
+    public void should_evict_least_recently_visited_pages_when_full() {
+        alsoViewing = new AlsoViewing(9999, 0, 16, clock);
+        for (int i = 0; i < 1000; i++) {
+            alsoViewing.add("url" + i, "user");
+        }
+        assertTrue(alsoViewing.size() <= 16);
+        assertEquals(1, alsoViewing.extractActiveUsersFor("url999", "currentUser").get("viewers").size());
+    }
+
+    @Test
+    public void sweep_should_remove_pages_without_active_visitors() {
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        alsoViewing.add("url", "foo");
+        alsoViewing.add("other", "foo");
+        clock.now += 3000;
+        alsoViewing.add("other", "bar");
+        clock.now += 3000;
+
+        alsoViewing.sweep();
+
+        assertEquals(1, alsoViewing.size());
+        assertEquals(Collections.singletonList("bar"), alsoViewing.extractActiveUsersFor("other", "currentUser").get("viewers"));
+    }
+
+    @Test
+    public void version_should_change_only_when_visitors_of_page_or_its_edit_page_change() {
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        alsoViewing.add("url", "foo");
+        long version = alsoViewing.version("url");
+
+        alsoViewing.add("url", "foo");
+        alsoViewing.add("other", "bar");
+        assertEquals(version, alsoViewing.version("url"));
+
+        alsoViewing.add("url/edit", "bar");
+        assertTrue(alsoViewing.version("url") > version);
+        assertEquals(alsoViewing.version("url"), alsoViewing.version("url/edit"));
+    }
+
+    @Test
+    public void should_tell_listeners_about_new_and_expired_visitors() {
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        final List<String> changed = new ArrayList<String>();
+        alsoViewing.addListener(new AlsoViewing.Listener() {
+            @Override
+            public void changed(String page) {
+                changed.add(page);
+            }
+
+            @Override
+            public void sweeping() {
+                changed.add("sweeping");
+            }
+        });
+
+        alsoViewing.add("url/", "foo");
+        alsoViewing.add("url", "foo");
+        clock.now += 6000;
+        alsoViewing.sweep();
+
+        assertEquals(Arrays.asList("url", "sweeping", "url"), changed);
+    }
+
+    @Test
+    public void touch_should_keep_visitor_without_changing_version() {
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        final List<String> changed = new ArrayList<String>();
+        alsoViewing.addListener(new AlsoViewing.Listener() {
+            @Override
+            public void changed(String page) {
+                changed.add(page);
+            }
+
+            @Override
+            public void sweeping() {
+            }
+        });
+        alsoViewing.add("url", "foo");
+        long version = alsoViewing.version("url");
+
+        clock.now += 6000;
+        alsoViewing.touch("url", "foo");
+        alsoViewing.sweep();
+
+        assertEquals(version, alsoViewing.version("url"));
+        assertEquals(Arrays.asList("url"), changed);
+        assertEquals(Arrays.asList("foo"), alsoViewing.extractActiveUsersFor("url", "bar").get("viewers"));
+    }
+
+    @Test
+    public void remote_change_should_keep_its_version_until_expired() {
+        alsoViewing = new AlsoViewing(5, 0, 100, clock);
+        clock.now += 60000;
+        alsoViewing.remoteChanged(Arrays.asList("url"));
+        long version = alsoViewing.version("url");
+        assertTrue(version > 0);
+
+        clock.now += 3000;
+        alsoViewing.sweep();
+        assertEquals(version, alsoViewing.version("url"));
+    }
+
+    @Test
+    public void should_fall_back_to_default_interval_when_property_is_invalid() {
+        System.setProperty("mingle.alsoViewing.interval", "five");
+        try {
+            assertEquals(5, AlsoViewing.interval());
+        } finally {
+            System.clearProperty("mingle.alsoViewing.interval");
+        }
+    }
+
+    private static class ManualClock implements AlsoViewing.Clock {
+        long now = 1000000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
 }
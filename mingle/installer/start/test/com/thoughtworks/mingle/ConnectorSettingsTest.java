@@ -0,0 +1,109 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ConnectorSettingsTest {
+
+    @Test
+    public void defaultsToNioAndTomcatDefaults() throws Exception {
+        ConnectorSettings settings = new ConnectorSettings(new Properties(), null);
+
+        assertEquals("org.apache.coyote.http11.Http11NioProtocol", settings.protocolClassName());
+        assertFalse(settings.http2);
+        assertNull(settings.maxThreads);
+        assertNull(settings.keepAliveTimeout);
+        assertEquals("on", settings.compression);
+        assertEquals(ConnectorSettings.DEFAULT_COMPRESSABLE_MIME_TYPE, settings.compressableMimeType);
+    }
+
+    @Test
+    public void stillHonoursTcconEnvironmentVariable() throws Exception {
+        assertEquals("bio", new ConnectorSettings(new Properties(), "BIO").protocol);
+        assertEquals("nio2", new ConnectorSettings(properties(MingleProperties.CONNECTOR_PROTOCOL_KEY, "NIO2"), "bio").protocol);
+    }
+
+    @Test
+    public void readsConnectorSettings() throws Exception {
+        ConnectorSettings settings = new ConnectorSettings(properties(
+                MingleProperties.CONNECTOR_HTTP2_KEY, "true",
+                MingleProperties.CONNECTOR_MAX_THREADS_KEY, "50",
+                MingleProperties.CONNECTOR_MIN_SPARE_THREADS_KEY, "5",
+                MingleProperties.CONNECTOR_MAX_CONNECTIONS_KEY, "-1",
+                MingleProperties.CONNECTOR_KEEP_ALIVE_TIMEOUT_KEY, " 15000 ",
+                MingleProperties.CONNECTOR_COMPRESSION_KEY, "off",
+                MingleProperties.CONNECTOR_COMPRESSABLE_MIME_TYPE_KEY, "text/html, text/css"), null);
+
+        assertTrue(settings.http2);
+        assertEquals(Integer.valueOf(50), settings.maxThreads);
+        assertEquals(Integer.valueOf(5), settings.minSpareThreads);
+        assertEquals(Integer.valueOf(-1), settings.maxConnections);
+        assertEquals(Integer.valueOf(15000), settings.keepAliveTimeout);
+        assertEquals("off", settings.compression);
+        assertEquals("text/html,text/css", settings.compressableMimeType);
+        assertTrue(settings.toString().contains("maxThreads=50, minSpareThreads=5, maxQueueSize=default"));
+    }
+
+    @Test
+    public void rejectsInvalidSettings() {
+        assertInvalid(MingleProperties.CONNECTOR_PROTOCOL_KEY, "apr");
+        assertInvalid(MingleProperties.CONNECTOR_HTTP2_KEY, "yes");
+        assertInvalid(MingleProperties.CONNECTOR_MAX_THREADS_KEY, "0");
+        assertInvalid(MingleProperties.CONNECTOR_MAX_THREADS_KEY, "many");
+        assertInvalid(MingleProperties.CONNECTOR_MIN_SPARE_THREADS_KEY, "201");
+        assertInvalid(MingleProperties.CONNECTOR_MAX_KEEP_ALIVE_REQUESTS_KEY, "0");
+        assertInvalid(MingleProperties.CONNECTOR_COMPRESSION_KEY, "gzip");
+        assertInvalid(MingleProperties.CONNECTOR_COMPRESSION_MIN_SIZE_KEY, "-1");
+    }
+
+    @Test
+    public void http2NeedsNonBlockingProtocol() {
+        try {
+            new ConnectorSettings(properties(MingleProperties.CONNECTOR_HTTP2_KEY, "true"), "bio");
+            fail("should not allow http2 on bio");
+        } catch (ConnectorSettings.ValidationException e) {
+            assertTrue(e.getMessage().contains("nio"));
+        }
+    }
+
+    private void assertInvalid(String key, String value) {
+        try {
+            new ConnectorSettings(properties(key, value), null);
+            fail(key + "=" + value + " should be rejected");
+        } catch (ConnectorSettings.ValidationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(key));
+        }
+    }
+
+    private static Properties properties(String... keysAndValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
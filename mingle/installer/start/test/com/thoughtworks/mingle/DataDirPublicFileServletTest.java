@@ -17,15 +17,20 @@
 
 package com.thoughtworks.mingle;
 
+import org.apache.catalina.Globals;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -98,6 +103,158 @@ public class DataDirPublicFileServletTest {
         verify(response).setStatus(404);
     }
 
+    @Test
+    public void sendsLengthAndValidators() throws Exception {
+        DataDirPublicFileServlet servlet = servlet();
+        HttpServletResponse response = mockResponse();
+        servlet.serveResource(mockRequest("sample_attachment.txt"), response);
+
+        verify(response).setContentLengthLong(SAMPLE.length());
+        verify(response).setHeader(eq("ETag"), anyString());
+        verify(response).setDateHeader(eq("Last-Modified"), anyLong());
+        verify(response).setHeader("Accept-Ranges", "bytes");
+        assertEquals(SAMPLE, output(response));
+    }
+
+    @Test
+    public void answersMatchingIfNoneMatchWithNotModified() throws Exception {
+        DataDirPublicFileServlet servlet = servlet();
+        HttpServletResponse response = mockResponse();
+        servlet.serveResource(mockRequest("sample_attachment.txt"), response);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+
+        HttpServletRequest request = mockRequest("sample_attachment.txt");
+        stub(request.getHeader("If-None-Match")).toReturn("\"other\", " + etag.getValue());
+        response = mockResponse();
+        servlet.serveResource(request, response);
+
+        verify(response).setStatus(304);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void answersIfModifiedSinceWithNotModifiedUnlessTheFileIsNewer() throws Exception {
+        DataDirPublicFileServlet servlet = servlet();
+        long lastModified = new File("test/data/sample_attachment.txt").lastModified();
+
+        HttpServletRequest request = mockRequest("sample_attachment.txt");
+        stub(request.getDateHeader("If-Modified-Since")).toReturn(lastModified);
+        HttpServletResponse response = mockResponse();
+        servlet.serveResource(request, response);
+        verify(response).setStatus(304);
+
+        request = mockRequest("sample_attachment.txt");
+        stub(request.getDateHeader("If-Modified-Since")).toReturn(lastModified - 10000);
+        response = mockResponse();
+        servlet.serveResource(request, response);
+        verify(response, never()).setStatus(304);
+        assertEquals(SAMPLE, output(response));
+    }
+
+    @Test
+    public void servesSingleRanges() throws Exception {
+        DataDirPublicFileServlet servlet = servlet();
+        HttpServletResponse response = mockResponse();
+        servlet.serveResource(mockRangeRequest("bytes=5-8"), response);
+
+        verify(response).setStatus(206);
+        verify(response).setHeader("Content-Range", "bytes 5-8/" + SAMPLE.length());
+        verify(response).setContentLengthLong(4);
+        assertEquals("is a", output(response));
+
+        response = mockResponse();
+        servlet.serveResource(mockRangeRequest("bytes=-12"), response);
+        assertEquals(SAMPLE.substring(SAMPLE.length() - 12), output(response));
+
+        response = mockResponse();
+        servlet.serveResource(mockRangeRequest("bytes=10-1000"), response);
+        assertEquals(SAMPLE.substring(10), output(response));
+    }
+
+    @Test
+    public void servesMultipleRangesAsMultipartByteranges() throws Exception {
+        DataDirPublicFileServlet servlet = servlet();
+        HttpServletResponse response = mockResponse();
+        servlet.serveResource(mockRangeRequest("bytes=0-3, 10-15"), response);
+
+        verify(response).setStatus(206);
+        ArgumentCaptor<String> contentType = ArgumentCaptor.forClass(String.class);
+        verify(response).setContentType(contentType.capture());
+        assertTrue(contentType.getValue().startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.getValue().substring("multipart/byteranges; boundary=".length());
+
+        String body = output(response);
+        assertEquals("\r\n--" + boundary + "\r\nContent-Range: bytes 0-3/29\r\n\r\nThis" +
+                "\r\n--" + boundary + "\r\nContent-Range: bytes 10-15/29\r\n\r\nsample" +
+                "\r\n--" + boundary + "--\r\n", body);
+        verify(response).setContentLengthLong(body.length());
+    }
+
+    @Test
+    public void rejectsRangesOutsideTheFile() throws Exception {
+        HttpServletResponse response = mockResponse();
+        servlet().serveResource(mockRangeRequest("bytes=100-"), response);
+
+        verify(response).setStatus(416);
+        verify(response).setHeader("Content-Range", "bytes */" + SAMPLE.length());
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void sendsTheWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+        HttpServletRequest request = mockRangeRequest("bytes=5-8");
+        stub(request.getHeader("If-Range")).toReturn("\"stale\"");
+        HttpServletResponse response = mockResponse();
+        servlet().serveResource(request, response);
+
+        verify(response, never()).setStatus(206);
+        assertEquals(SAMPLE, output(response));
+    }
+
+    @Test
+    public void handsLargeFilesToSendfileWhenTheConnectorSupportsIt() throws Exception {
+        File publicDir = new File(System.getProperty("java.io.tmpdir"), "mingle-public-" + System.nanoTime());
+        File large = new File(publicDir, "large.bin");
+        FileUtils.writeByteArrayToFile(large, new byte[100000]);
+        try {
+            DataDirPublicFileServlet servlet = new DataDirPublicFileServlet();
+            servlet.setPublicDir(publicDir);
+            HttpServletRequest request = mockRangeRequest("bytes=1000-");
+            stub(request.getRequestURI()).toReturn("large.bin");
+            stub(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR)).toReturn(Boolean.TRUE);
+            HttpServletResponse response = mockResponse();
+            servlet.serveResource(request, response);
+
+            verify(request).setAttribute(Globals.SENDFILE_FILENAME_ATTR, large.getCanonicalPath());
+            verify(request).setAttribute(Globals.SENDFILE_FILE_START_ATTR, 1000L);
+            verify(request).setAttribute(Globals.SENDFILE_FILE_END_ATTR, 100000L);
+            verify(response).setContentLengthLong(99000);
+            verify(response, never()).getOutputStream();
+        } finally {
+            FileUtils.deleteDirectory(publicDir);
+        }
+    }
+
+    private static final String SAMPLE = "This is a sample attachment.\n";
+
+    private DataDirPublicFileServlet servlet() {
+        DataDirPublicFileServlet servlet = new DataDirPublicFileServlet();
+        servlet.setPublicDir(new File("test/data"));
+        return servlet;
+    }
+
+    private HttpServletRequest mockRangeRequest(String range) throws IOException {
+        HttpServletRequest request = mockRequest("sample_attachment.txt");
+        stub(request.getHeader("Range")).toReturn(range);
+        stub(request.getDateHeader(anyString())).toReturn(-1L);
+        return request;
+    }
+
+    private String output(HttpServletResponse response) throws IOException {
+        return response.getOutputStream().toString();
+    }
+
     private HttpServletRequest mockRequest(String path) throws IOException {
         return mockRequest(path, "");
     }
@@ -107,6 +264,7 @@ public class DataDirPublicFileServletTest {
         stub(request.getRequestURI()).toReturn(path);
         stub(request.getContextPath()).toReturn("/");
         stub(request.getQueryString()).toReturn(query);
+        stub(request.getDateHeader(anyString())).toReturn(-1L);
 
         return request;
     }
@@ -114,6 +272,8 @@ public class DataDirPublicFileServletTest {
     private HttpServletResponse mockResponse() throws IOException {
         HttpServletResponse response = mock(HttpServletResponse.class);
         when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
             public boolean isReady() {
                 return true;
             }
@@ -123,6 +283,11 @@ public class DataDirPublicFileServletTest {
             }
 
             public void write(int i) throws IOException {
+                written.write(i);
+            }
+
+            public String toString() {
+                return new String(written.toByteArray());
             }
         });
 
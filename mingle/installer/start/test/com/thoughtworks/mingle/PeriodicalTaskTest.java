@@ -0,0 +1,122 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import com.thoughtworks.mingle.rack.BorrowerClass;
+import com.thoughtworks.mingle.rack.LoggedPool;
+import com.thoughtworks.mingle.rack.MingleApplication;
+import com.thoughtworks.mingle.rack.PoolStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PeriodicalTaskTest {
+    private LoggedPool pool;
+    private TaskScheduler scheduler;
+    private PeriodicalTask task;
+
+    @Before
+    public void setUp() {
+        pool = mock(LoggedPool.class);
+        scheduler = mock(TaskScheduler.class);
+        when(pool.getStatus()).thenReturn(new PoolStatus(2, 2, 0, 0));
+
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("command", "Job.run");
+        config.put("interval", 60);
+        config.put("minIdle", 1);
+        task = new PeriodicalTask(new TaskConfig("job-0", config), pool, scheduler);
+    }
+
+    @Test
+    public void shouldWaitForReturnedRuntimesInsteadOfAnIntervalWhenPoolIsBusy() {
+        task.run();
+        verify(scheduler, never()).schedule(eq(task), anyLong());
+
+        assertTrue(task.capacityAvailable(1));
+        verify(scheduler).schedule(task, 0);
+    }
+
+    @Test
+    public void shouldClaimReturnedCapacityOnlyOnce() {
+        task.run();
+        assertTrue(task.capacityAvailable(1));
+        assertFalse(task.capacityAvailable(1));
+        verify(scheduler, times(1)).schedule(task, 0);
+    }
+
+    @Test
+    public void shouldIgnoreCapacityBelowMinIdleAndWhenNotWaiting() {
+        assertFalse(task.capacityAvailable(1));
+        task.run();
+        assertFalse(task.capacityAvailable(0));
+    }
+
+    @Test
+    public void shouldRunAgainAfterTheIntervalWhenARunSucceeds() throws Exception {
+        MingleApplication application = idlePoolLending();
+
+        task.run();
+
+        verify(application).evalScriptlet(anyString());
+        verify(scheduler).schedule(task, 60 * 1000);
+    }
+
+    @Test
+    public void shouldRetryAfterTheBackoffAloneWhenARunFails() throws Exception {
+        MingleApplication application = idlePoolLending();
+        when(application.evalScriptlet(anyString())).thenThrow(new RuntimeException("job failed"));
+
+        task.run();
+        verify(scheduler).schedule(task, 10 * 1000);
+
+        task.run();
+        verify(scheduler).schedule(task, 20 * 1000);
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyUpToACap() {
+        assertEquals(10 * 1000, PeriodicalTask.retryDelay(1));
+        assertEquals(20 * 1000, PeriodicalTask.retryDelay(2));
+        assertEquals(80 * 1000, PeriodicalTask.retryDelay(4));
+        assertEquals(10 * 60 * 1000, PeriodicalTask.retryDelay(10));
+        assertEquals(10 * 60 * 1000, PeriodicalTask.retryDelay(1000));
+    }
+
+    private MingleApplication idlePoolLending() throws Exception {
+        MingleApplication application = mock(MingleApplication.class);
+        when(pool.getStatus()).thenReturn(new PoolStatus(2, 2, 1, 1));
+        when(pool.borrowApplication(anyString(), any(BorrowerClass.class))).thenReturn(application);
+        return application;
+    }
+}
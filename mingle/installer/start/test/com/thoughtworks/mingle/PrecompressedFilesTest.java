@@ -0,0 +1,129 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.apache.catalina.Globals;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.stub;
+
+public class PrecompressedFilesTest {
+    private File publicDir;
+    private File generatedDir;
+    private FileSender sender = new FileSender();
+    private PrecompressedFiles precompressed;
+    private String script;
+
+    @Before
+    public void setup() throws Exception {
+        File dir = Files.createTempDirectory("precompressed").toFile();
+        publicDir = new File(dir, "public");
+        generatedDir = new File(dir, "generated");
+        script = StringUtils.repeat("var card = new Card();\n", 100);
+        FileUtils.writeStringToFile(new File(publicDir, "javascripts/cards.js"), script);
+        FileUtils.writeStringToFile(new File(publicDir, "javascripts/tiny.js"), "var x;");
+        precompressed = new PrecompressedFiles(publicDir, generatedDir, sender, null);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(publicDir.getParentFile());
+    }
+
+    @Test
+    public void acceptsEncodingsWithoutZeroQuality() {
+        assertTrue(PrecompressedFiles.accepts("gzip, deflate, br", "br"));
+        assertTrue(PrecompressedFiles.accepts("GZIP;q=0.5", "gzip"));
+        assertFalse(PrecompressedFiles.accepts("gzip;q=0, deflate", "gzip"));
+        assertFalse(PrecompressedFiles.accepts("gzip;q=0.000", "gzip"));
+        assertFalse(PrecompressedFiles.accepts("x-gzip, deflate", "gzip"));
+    }
+
+    @Test
+    public void writesGzipCopiesOfCompressibleFiles() throws Exception {
+        precompressed.run();
+
+        File copy = new File(generatedDir, "javascripts/cards.js.gz");
+        assertTrue("should write a copy", copy.isFile());
+        assertEquals(script, IOUtils.toString(new GZIPInputStream(new FileInputStream(copy))));
+        assertFalse("too small to compress", new File(generatedDir, "javascripts/tiny.js.gz").exists());
+        assertFalse("already up to date", precompressed.generate(new File(publicDir, "javascripts/cards.js"), "/javascripts/cards.js"));
+    }
+
+    @Test
+    public void sendsGzipCopyWhenAccepted() throws Exception {
+        precompressed.run();
+        FileSender.Metadata file = sender.metadata(publicDir, new File(publicDir, "javascripts/cards.js"));
+
+        PrecompressedFiles.Variant variant = precompressed.variant(request("gzip, deflate", false), "/javascripts/cards.js", file);
+        assertEquals("gzip", variant.encoding);
+        assertEquals(new File(generatedDir, "javascripts/cards.js.gz").getCanonicalFile(), variant.file.file);
+
+        assertNull(precompressed.variant(request("deflate", false), "/javascripts/cards.js", file));
+        assertNull(precompressed.variant(request(null, false), "/javascripts/cards.js", file));
+    }
+
+    @Test
+    public void prefersShippedCopies() throws Exception {
+        File shipped = new File(publicDir, "javascripts/cards.js.gz");
+        FileUtils.writeStringToFile(shipped, "shipped");
+        FileSender.Metadata file = sender.metadata(publicDir, new File(publicDir, "javascripts/cards.js"));
+
+        precompressed.run();
+        assertFalse("should use the shipped copy", new File(generatedDir, "javascripts/cards.js.gz").exists());
+        assertEquals(shipped.getCanonicalFile(), precompressed.variant(request("gzip", false), "/javascripts/cards.js", file).file.file);
+
+        shipped.setLastModified(file.lastModified - 10000);
+        sender = new FileSender();
+        precompressed = new PrecompressedFiles(publicDir, null, sender, null);
+        assertNull("stale copies are not sent", precompressed.variant(request("gzip", false), "/javascripts/cards.js", file));
+    }
+
+    @Test
+    public void sendsBrotliCopiesOnlyThroughSendfile() throws Exception {
+        File shipped = new File(publicDir, "javascripts/cards.js.br");
+        FileUtils.writeStringToFile(shipped, StringUtils.repeat("b", (int) FileSender.SENDFILE_MIN_SIZE));
+        FileSender.Metadata file = sender.metadata(publicDir, new File(publicDir, "javascripts/cards.js"));
+
+        assertEquals("br", precompressed.variant(request("gzip, br", true), "/javascripts/cards.js", file).encoding);
+        assertNull("the connector would gzip it again", precompressed.variant(request("gzip, br", false), "/javascripts/cards.js", file));
+    }
+
+    private HttpServletRequest request(String acceptEncoding, boolean sendfile) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        stub(request.getHeader("Accept-Encoding")).toReturn(acceptEncoding);
+        stub(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR)).toReturn(sendfile);
+        return request;
+    }
+}
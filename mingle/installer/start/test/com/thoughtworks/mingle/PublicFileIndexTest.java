@@ -0,0 +1,85 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class PublicFileIndexTest {
+    private File root;
+    private PublicFileIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("public").toFile();
+        FileUtils.writeStringToFile(new File(root, "robots.txt"), "User-agent: *");
+        FileUtils.writeStringToFile(new File(root, "images/icons/card.png"), "png");
+        index = new PublicFileIndex(root);
+        index.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        index.stop();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void findsFilesInPublicDir() {
+        assertTrue("should be a file", index.isFile("/robots.txt"));
+        assertTrue("should be a file", index.isFile("/images/icons/card.png"));
+        assertTrue("should be a file", index.isFile("//images//icons/card.png"));
+
+        assertFalse("directories are not files", index.isFile("/images"));
+        assertFalse("directories are not files", index.isFile("/images/icons/"));
+        assertFalse("directories are not files", index.isFile("/"));
+        assertFalse("should not exist", index.isFile("/projects/foo/cards"));
+        assertFalse("should not exist", index.isFile("/robots.txt/foo"));
+    }
+
+    @Test
+    public void resolvesRelativeSegmentsOnDisk() {
+        assertTrue("should be a file", index.isFile("/images/../robots.txt"));
+        assertFalse("should not exist", index.isFile("/images/./missing.png"));
+    }
+
+    @Test
+    public void picksUpChangedFiles() throws Exception {
+        FileUtils.writeStringToFile(new File(root, "images/icons/new.png"), "png");
+        FileUtils.forceDelete(new File(root, "robots.txt"));
+
+        long giveUp = System.currentTimeMillis() + 10000;
+        while (!index.isFile("/images/icons/new.png") && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(50);
+        }
+        while (index.isFile("/robots.txt") && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(50);
+        }
+
+        assertTrue("should be a file", index.isFile("/images/icons/new.png"));
+        assertFalse("should be deleted", index.isFile("/robots.txt"));
+    }
+}
@@ -272,6 +272,11 @@ public class ScheduledTasksTest {
         public void enable() {
 
         }
+
+        @Override
+        public TaskMetrics getMetrics() {
+            return null;
+        }
     }
 
     public static class SimpleTaskFactory implements ScheduledTasks.Factory {
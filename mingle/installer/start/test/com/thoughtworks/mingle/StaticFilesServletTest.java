@@ -37,4 +37,15 @@ public class StaticFilesServletTest {
         assertFalse("should be false", StaticFilesServlet.isStaticFile("/user/icon/123"));
     }
 
+    @Test
+    public void isFingerprinted() {
+        assertTrue("should be true", StaticFilesServlet.isFingerprinted("/assets/sprockets_app-3f172cf77f7d3d860209a3d3cb07fac0.js"));
+        assertTrue("should be true", StaticFilesServlet.isFingerprinted("/assets/print/cards-3f172cf77f7d3d860209a3d3cb07fac0.css"));
+        assertTrue("should be true", StaticFilesServlet.isFingerprinted("/assets/sprockets_app-3f172cf77f7d3d860209a3d3cb07fac0.js.gz"));
+
+        assertFalse("should be false", StaticFilesServlet.isFingerprinted("/assets/sprockets_app.js"));
+        assertFalse("should be false", StaticFilesServlet.isFingerprinted("/javascripts/sprockets_app-3f172cf77f7d3d860209a3d3cb07fac0.js"));
+        assertFalse("should be false", StaticFilesServlet.isFingerprinted("/assets/-3f172cf77f7d3d860209a3d3cb07fac0/foo.js"));
+    }
+
 }
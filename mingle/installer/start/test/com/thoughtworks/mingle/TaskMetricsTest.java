@@ -0,0 +1,64 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TaskMetricsTest {
+
+    @Test
+    public void shouldKeepOnlyTheMostRecentDurationsOldestFirst() {
+        TaskMetrics metrics = new TaskMetrics(3);
+        metrics.recordRun(10, 1, false);
+        metrics.recordRun(20, 2, true);
+        assertArrayEquals(new long[]{10, 20}, metrics.getRecentDurationsMillis());
+
+        metrics.recordRun(30, 0, false);
+        metrics.recordRun(40, 0, false);
+        assertArrayEquals(new long[]{20, 30, 40}, metrics.getRecentDurationsMillis());
+        assertEquals(40, metrics.getLastDurationMillis());
+        assertEquals(30, metrics.getAverageDurationMillis());
+        assertEquals(40, metrics.getMaxDurationMillis());
+    }
+
+    @Test
+    public void shouldCountRunsFailuresAndSkips() {
+        TaskMetrics metrics = new TaskMetrics();
+        metrics.recordRun(10, 5, false);
+        metrics.recordRun(20, 7, true);
+        metrics.recordSkippedForIdle();
+        metrics.recordRejected();
+
+        assertEquals(2, metrics.getRunCount());
+        assertEquals(1, metrics.getFailureCount());
+        assertEquals(1, metrics.getSkippedForIdleCount());
+        assertEquals(1, metrics.getRejectedCount());
+        assertEquals(30, metrics.getTotalDurationMillis());
+        assertEquals(12, metrics.getTotalPoolWaitMillis());
+    }
+
+    @Test
+    public void shouldReportZeroBeforeAnyRun() {
+        TaskMetrics metrics = new TaskMetrics();
+        assertEquals(0, metrics.getLastDurationMillis());
+        assertEquals(0, metrics.getAverageDurationMillis());
+        assertEquals(0, metrics.getRecentDurationsMillis().length);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskSchedulerTest {
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        ScheduledTasksTest.clearMingleSystemProperties();
+        System.clearProperty(MingleProperties.JRUBY_MAX_RUNTIMES_KEY);
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        ScheduledTasksTest.clearMingleSystemProperties();
+        System.clearProperty(MingleProperties.JRUBY_MAX_RUNTIMES_KEY);
+    }
+
+    @Test
+    public void shouldDefaultToTheJRubyMaxRuntimes() {
+        System.setProperty(MingleProperties.JRUBY_MAX_RUNTIMES_KEY, "3");
+        scheduler = new TaskScheduler();
+        assertEquals(3, scheduler.getPoolSize());
+    }
+
+    @Test
+    public void shouldUseTheBackgroundJobThreadsProperty() {
+        System.setProperty(MingleProperties.JRUBY_MAX_RUNTIMES_KEY, "3");
+        System.setProperty(TaskScheduler.THREADS_KEY, "5");
+        scheduler = new TaskScheduler();
+        assertEquals(5, scheduler.getPoolSize());
+    }
+
+    @Test
+    public void shouldFallBackToTheJRubyMaxRuntimesWhenTheThreadsPropertyIsInvalid() {
+        System.setProperty(MingleProperties.JRUBY_MAX_RUNTIMES_KEY, "3");
+        System.setProperty(TaskScheduler.THREADS_KEY, "many");
+        scheduler = new TaskScheduler();
+        assertEquals(3, scheduler.getPoolSize());
+    }
+
+    @Test
+    public void shouldRunAtLeastOneThread() {
+        System.setProperty(TaskScheduler.THREADS_KEY, "0");
+        scheduler = new TaskScheduler();
+        assertEquals(1, scheduler.getPoolSize());
+    }
+
+    @Test
+    public void shouldRunTasksOnDaemonThreads() throws Exception {
+        scheduler = new TaskScheduler(1);
+        final AtomicBoolean daemon = new AtomicBoolean(false);
+        final CountDownLatch ran = new CountDownLatch(1);
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                daemon.set(Thread.currentThread().isDaemon());
+                ran.countDown();
+            }
+        }, 0);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(daemon.get());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectTasksAfterShutdown() {
+        scheduler = new TaskScheduler(1);
+        assertFalse(scheduler.isShutdown());
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+
+        scheduler.schedule(new Runnable() {
+            public void run() {
+            }
+        }, 0);
+    }
+
+    @Test
+    public void shouldInterruptRunningTasksOnShutdown() throws Exception {
+        scheduler = new TaskScheduler(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }, 0);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -18,6 +18,7 @@
 package com.thoughtworks.mingle.multiapp;
 
 import net.spy.memcached.MemcachedClient;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -27,6 +28,9 @@ import java.util.UUID;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RouteConfigClientTest {
@@ -44,21 +48,99 @@ public class RouteConfigClientTest {
     public void testIsEnabledChecksMemcached() throws IOException {
         when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("false");
 
-        assertTrue(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient).isEnabled());
+        assertTrue(refreshed(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient)).isEnabled());
     }
 
     @Test
     public void testIsEnabledWhenMemcachedCheckReturnsEmpty() throws IOException {
         when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn(null);
 
-        assertTrue(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient).isEnabled());
+        assertTrue(refreshed(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient)).isEnabled());
     }
 
     @Test
     public void testIsDisableddWhenMemcachedCheckReturnsTrue() {
         when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("true");
 
-        assertFalse(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient).isEnabled());
+        assertFalse(refreshed(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient)).isEnabled());
     }
 
+    @Test
+    public void testIsDisabledAndDoesNotHitMemcachedBeforeTheFirstRefresh() {
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("false");
+        RouteConfigClient client = new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient);
+
+        assertFalse(client.isEnabled());
+        verify(memcachedClient, never()).get("MULTI_APP_ROUTING_DISABLED");
+    }
+
+    @Test
+    public void testIsEnabledDoesNotHitMemcachedUntilRefreshed() {
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("false");
+        RouteConfigClient client = refreshed(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient));
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("true");
+
+        assertTrue(client.isEnabled());
+        assertTrue(client.isEnabled());
+        verify(memcachedClient, times(1)).get("MULTI_APP_ROUTING_DISABLED");
+
+        client.refresh();
+        assertFalse(client.isEnabled());
+    }
+
+    @Test
+    public void testFirstRefreshRunsInTheBackground() throws InterruptedException {
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("false");
+        RouteConfigClient client = new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient);
+        client.startRefreshing(60 * 1000);
+        try {
+            for (int i = 0; i < 100 && !client.isEnabled(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(client.isEnabled());
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testReloadReplacesRouteConfigsAndIncreasesVersion() throws IOException {
+        RouteConfigClient client = new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient);
+        FileUtils.writeStringToFile(tempFile, "routeConfigs:\n  - context: rails_5\n    rootServletName: RackServlet\n    routes:\n      - /api/internal/.*\n");
+
+        assertTrue(client.reload());
+
+        assertEquals(2, client.getVersion());
+        assertEquals("RackServlet", client.getConfigForRoute("/api/internal/cards").getRootServletName());
+    }
+
+    @Test
+    public void testReloadKeepsRouteConfigsInUseWhenNewFileIsInvalid() throws IOException {
+        FileUtils.writeStringToFile(tempFile, "routeConfigs:\n  - context: rails_5\n    rootServletName: RackServlet\n    routes:\n      - /api/internal/.*\n");
+        RouteConfigClient client = new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient);
+
+        FileUtils.writeStringToFile(tempFile, "routeConfigs:\n  - context: rails_5\n    routes:\n      - /api/(internal/.*\n");
+        assertFalse(client.reload());
+        FileUtils.writeStringToFile(tempFile, "routeConfigs:\n  - context: rails_5\n    routes:\n      - /packs/.*\n");
+        assertFalse(client.reload());
+
+        assertEquals(1, client.getVersion());
+        assertEquals("RackServlet", client.getConfigForRoute("/api/internal/cards").getRootServletName());
+    }
+
+    @Test
+    public void testKeepsLastKnownValueWhenMemcachedFails() {
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenReturn("false");
+        RouteConfigClient client = refreshed(new RouteConfigClient(tempFile.getAbsolutePath(), memcachedClient));
+        when(memcachedClient.get("MULTI_APP_ROUTING_DISABLED")).thenThrow(new RuntimeException("timed out"));
+
+        client.refresh();
+
+        assertTrue(client.isEnabled());
+    }
+
+    private RouteConfigClient refreshed(RouteConfigClient client) {
+        client.refresh();
+        return client;
+    }
 }
@@ -0,0 +1,94 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+package com.thoughtworks.mingle.multiapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RouteMatcherTest {
+    private static final RouteConfig NO_ROUTE = new RouteConfig();
+
+    @Test
+    public void shouldReturnFirstConfigWithMatchingRoute() {
+        RouteConfig assets = config("AssetServlet", "/packs/.*", "/javascripts/ckeditor_4_8/.*");
+        RouteConfig api = config("RackServlet", "/api/internal/.*", "/programs/.*/settings.*");
+        RouteConfig catchAll = config("Other", ".*/settings");
+        RouteMatcher matcher = new RouteMatcher(Arrays.asList(assets, api, catchAll), NO_ROUTE, 10);
+
+        assertSame(assets, matcher.match("/packs/app.js"));
+        assertSame(api, matcher.match("/api/internal/cards"));
+        assertSame(api, matcher.match("/programs/foo/settings"));
+        assertSame(catchAll, matcher.match("/projects/foo/settings"));
+        assertSame(NO_ROUTE, matcher.match("/projects/foo/cards"));
+        assertSame(NO_ROUTE, matcher.match("/pack"));
+    }
+
+    @Test
+    public void shouldKeepAnsweringCorrectlyOnceCacheIsFull() {
+        RouteConfig api = config("RackServlet", "/api/internal/.*");
+        RouteMatcher matcher = new RouteMatcher(Arrays.asList(api), NO_ROUTE, 2);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(api, matcher.match("/api/internal/" + i));
+            assertSame(NO_ROUTE, matcher.match("/api/" + i));
+        }
+    }
+
+    @Test
+    public void shouldMatchRoutesWithAlternativesLikeBefore() {
+        RouteConfig either = config("RackServlet", "/a|/b");
+        RouteMatcher matcher = new RouteMatcher(Arrays.asList(either), NO_ROUTE, 10);
+
+        assertSame(either, matcher.match("/a/x"));
+        assertSame(either, matcher.match("/x/b"));
+        assertSame(NO_ROUTE, matcher.match("/x"));
+    }
+
+    @Test
+    public void shouldMatchRoutesWithGroupsAndBackreferencesOnTheirOwn() {
+        RouteConfig grouped = config("RackServlet", "/packs/.*", "/x/(\\d+)", "/(cards|pages)/\\d+/\\1", "/(?<id>\\d+)/\\k<id>");
+        RouteMatcher matcher = new RouteMatcher(Arrays.asList(grouped), NO_ROUTE, 10);
+
+        assertSame(grouped, matcher.match("/packs/app.js"));
+        assertSame(grouped, matcher.match("/cards/1/cards"));
+        assertSame(grouped, matcher.match("/7/7"));
+        assertSame(grouped, matcher.match("/x/12"));
+        assertSame(NO_ROUTE, matcher.match("/cards/1/pages"));
+        assertSame(NO_ROUTE, matcher.match("/7/8"));
+    }
+
+    @Test
+    public void shouldIndexRoutesByLiteralPrefix() {
+        assertEquals("/packs/", RouteMatcher.literalPrefix("/packs/.*"));
+        assertEquals("/cards", RouteMatcher.literalPrefix("/cards/?"));
+        assertEquals("/api", RouteMatcher.literalPrefix("/api\\.json"));
+        assertEquals("", RouteMatcher.literalPrefix("(?i)/packs"));
+        assertEquals("", RouteMatcher.literalPrefix("/a|/b"));
+    }
+
+    private RouteConfig config(String servlet, String... routes) {
+        RouteConfig config = new RouteConfig();
+        config.setContext("rails_5");
+        config.setRootServletName(servlet);
+        config.setRoutes(Arrays.asList(routes));
+        return config;
+    }
+}
@@ -17,12 +17,14 @@
 
 package com.thoughtworks.mingle.multiapp;
 
+import com.thoughtworks.mingle.MingleProperties;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import java.io.File;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class RouterFactoryTest {
@@ -41,4 +43,16 @@ public class RouterFactoryTest {
         config.delete();
     }
 
+    @Test
+    public void testShouldUseDefaultRefreshIntervalWhenConfiguredOneIsNotANumber() {
+        System.setProperty(MingleProperties.MULTI_APP_ROUTING_REFRESH_INTERVAL, "5s");
+        try {
+            assertEquals(RouteConfigClient.DEFAULT_REFRESH_INTERVAL_MILLIS, RouterFactory.refreshIntervalMillis());
+            System.setProperty(MingleProperties.MULTI_APP_ROUTING_REFRESH_INTERVAL, " 2000 ");
+            assertEquals(2000, RouterFactory.refreshIntervalMillis());
+        } finally {
+            System.clearProperty(MingleProperties.MULTI_APP_ROUTING_REFRESH_INTERVAL);
+        }
+    }
+
 }
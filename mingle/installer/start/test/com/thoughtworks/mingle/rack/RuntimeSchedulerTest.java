@@ -0,0 +1,111 @@
+/*
+*  Copyright 2020 ThoughtWorks, Inc.
+*  
+*  This program is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU Affero General Public License as
+*  published by the Free Software Foundation, either version 3 of the
+*  License, or (at your option) any later version.
+*  
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU Affero General Public License for more details.
+*  
+*  You should have received a copy of the GNU Affero General Public License
+*  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+*/
+
+package com.thoughtworks.mingle.rack;
+
+import com.thoughtworks.mingle.PoolAdmissionRejectedException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RuntimeSchedulerTest {
+
+    @Test
+    public void shouldAdmitBorrowersFromAnyLaneWhileSharedRuntimesAreFree() throws Exception {
+        RuntimeScheduler scheduler = scheduler(2, new int[]{0, 0, 0, 0}, 0);
+        scheduler.admit(BorrowerClass.INTERACTIVE, "web");
+        scheduler.admit(BorrowerClass.BACKGROUND, "task");
+        assertEquals(1, scheduler.active(BorrowerClass.INTERACTIVE));
+        assertEquals(1, scheduler.active(BorrowerClass.BACKGROUND));
+    }
+
+    @Test
+    public void shouldRejectInsteadOfWaitingPastTheDeadline() throws Exception {
+        RuntimeScheduler scheduler = scheduler(1, new int[]{0, 0, 0, 0}, 0);
+        scheduler.admit(BorrowerClass.BACKGROUND, "task");
+        try {
+            scheduler.admit(BorrowerClass.INTERACTIVE, "web");
+            fail("should have rejected the borrower");
+        } catch (PoolAdmissionRejectedException expected) {
+        }
+        assertEquals(0, scheduler.waiting(BorrowerClass.INTERACTIVE));
+    }
+
+    @Test
+    public void shouldKeepReservedRuntimesForTheirLane() throws Exception {
+        RuntimeScheduler scheduler = scheduler(2, new int[]{0, 0, 0, 1}, 0);
+        scheduler.admit(BorrowerClass.INTERACTIVE, "web 1");
+        try {
+            scheduler.admit(BorrowerClass.INTERACTIVE, "web 2");
+            fail("interactive borrowers should not use the background reservation");
+        } catch (PoolAdmissionRejectedException expected) {
+        }
+        scheduler.admit(BorrowerClass.BACKGROUND, "task");
+        assertEquals(1, scheduler.active(BorrowerClass.BACKGROUND));
+    }
+
+    @Test
+    public void shouldIgnoreReservationsLargerThanThePool() throws Exception {
+        RuntimeScheduler scheduler = scheduler(1, new int[]{1, 1, 1, 1}, 0);
+        scheduler.admit(BorrowerClass.API, "api");
+        assertEquals(1, scheduler.active(BorrowerClass.API));
+    }
+
+    @Test
+    public void shouldHandOverReleasedRuntimeToWaitingBorrower() throws Exception {
+        final RuntimeScheduler scheduler = scheduler(1, new int[]{0, 0, 0, 0}, 5000);
+        scheduler.admit(BorrowerClass.BACKGROUND, "task");
+
+        Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    scheduler.admit(BorrowerClass.INTERACTIVE, "web");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        waiter.start();
+        while (scheduler.waiting(BorrowerClass.INTERACTIVE) == 0) {
+            Thread.sleep(10);
+        }
+
+        scheduler.release(BorrowerClass.BACKGROUND);
+        waiter.join(5000);
+        assertEquals(1, scheduler.active(BorrowerClass.INTERACTIVE));
+        assertEquals(0, scheduler.active(BorrowerClass.BACKGROUND));
+    }
+
+    @Test
+    public void shouldRejectImmediatelyWhenLaneQueueIsFull() throws Exception {
+        RuntimeScheduler scheduler = new RuntimeScheduler(1, new int[]{0, 0, 0, 0}, new long[]{60000, 60000, 60000, 60000}, new int[]{0, 0, 0, 0});
+        scheduler.admit(BorrowerClass.ADMIN, "health check");
+        long start = System.currentTimeMillis();
+        try {
+            scheduler.admit(BorrowerClass.ADMIN, "health check");
+            fail("should have rejected the borrower");
+        } catch (PoolAdmissionRejectedException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 60000);
+    }
+
+    private RuntimeScheduler scheduler(int capacity, int[] reserved, long maxWaitMillis) {
+        return new RuntimeScheduler(capacity, reserved, new long[]{maxWaitMillis, maxWaitMillis, maxWaitMillis, maxWaitMillis}, new int[]{capacity, capacity, capacity, capacity});
+    }
+}
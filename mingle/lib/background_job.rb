@@ -21,7 +21,7 @@ class BackgroundJob
   end
 
   def run_once
-    @task.call
+    QueryTimeout.limit(QueryTimeout.background_job_seconds) { @task.call }
   rescue => e
     @alarms.notify(e, {:task => task_name})
     raise e
@@ -0,0 +1,43 @@
+#  Copyright 2020 ThoughtWorks, Inc.
+#  
+#  This program is free software: you can redistribute it and/or modify
+#  it under the terms of the GNU Affero General Public License as
+#  published by the Free Software Foundation, either version 3 of the
+#  License, or (at your option) any later version.
+#  
+#  This program is distributed in the hope that it will be useful,
+#  but WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+#  GNU Affero General Public License for more details.
+#  
+#  You should have received a copy of the GNU Affero General Public License
+#  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+
+# Deadlines for the SQL statements of a web request or background job, after
+# which the JDBC adapter cancels them with ActiveRecord::QueryCanceled, so a
+# runaway query cannot hold a JRuby runtime and a database connection forever.
+module QueryTimeout
+  DEFAULT_REQUEST_SECONDS = 300
+
+  def self.request_seconds
+    seconds(MingleConfiguration.query_timeout, DEFAULT_REQUEST_SECONDS)
+  end
+
+  def self.background_job_seconds
+    seconds(MingleConfiguration.background_job_query_timeout, 0)
+  end
+
+  # Runs the block with a deadline +seconds+ from now for the statements it
+  # runs; 0 or nil runs it without one.
+  def self.limit(seconds, &block)
+    return yield if seconds.to_i <= 0
+
+    connection = ActiveRecord::Base.connection
+    return yield unless connection.respond_to?(:with_query_timeout)
+    connection.with_query_timeout(seconds.to_i, &block)
+  end
+
+  def self.seconds(value, default)
+    value.blank? ? default : value.to_i
+  end
+end
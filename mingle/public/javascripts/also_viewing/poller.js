@@ -16,17 +16,22 @@
 */
 AlsoViewing.Poller = Class.create({
   initialize: function() {
-    this.options = this.getOptions();
+    this.version = null;
+    this.longPolling = false;
+    this.longPollingFailed = false;
+    this.onSuccess = this.onSuccess.bind(this);
+    this.onFailure = this.onFailure.bind(this);
   },
 
   start: function() {
-    if (this.timerId || AlsoViewing.INTERVAL < 1) { return; }
+    if (this.timerId || this.longPolling || AlsoViewing.INTERVAL < 1) { return; }
     var doPoll = this.poll.bind(this);
     doPoll();
     this.timerId = setInterval(doPoll, AlsoViewing.INTERVAL * 1000);
   },
 
   stop: function() {
+    this.longPolling = false;
     if (this.timerId) {
       clearInterval(this.timerId);
       this.timerId = null;
@@ -34,20 +39,48 @@ AlsoViewing.Poller = Class.create({
   },
 
   poll: function() {
-    new Ajax.Request((AlsoViewing.CONTEXT_PATH || '') + "/also_viewing", this.options);
+    new Ajax.Request((AlsoViewing.CONTEXT_PATH || '') + "/also_viewing", this.getOptions());
   },
 
   getOptions: function() {
     var queryParams = { currentUser: AlsoViewing.CurrentUser(), url: AlsoViewing.CurrentPath(), bypassMingleAjaxErrorHandler: true, format: 'json' };
-    return { parameters: queryParams, onSuccess: this.onSuccess, onFailure: this.onFailure.bind(this) };
+    if (!this.longPollingFailed) {
+      queryParams.wait = true;
+      if (this.version !== null) { queryParams.version = this.version; }
+    }
+    return { parameters: queryParams, onSuccess: this.onSuccess, onFailure: this.onFailure };
   },
 
   onFailure: function(xhr) {
+    var wasLongPolling = this.longPolling;
     this.stop();
+    if (wasLongPolling) {
+      // fall back to polling every interval
+      this.longPollingFailed = true;
+      this.version = null;
+      this.start();
+    }
   },
 
   onSuccess: function(xhr) {
-    $('notification').fire("AlsoViewing:update", xhr.responseJSON);
+    var users = xhr.responseJSON;
+    if (!users) {
+      // a dropped connection (status 0) or a body without JSON; a long poll would never be sent again
+      if (this.longPolling) { this.onFailure(xhr); }
+      return;
+    }
+    $('notification').fire("AlsoViewing:update", users);
+    if (users.version === undefined || this.longPollingFailed) { return; }
+    if (!this.timerId && !this.longPolling) { return; }
+
+    // the server holds the next request until something changes, so there is no need for the timer
+    this.version = users.version;
+    if (this.timerId) {
+      clearInterval(this.timerId);
+      this.timerId = null;
+    }
+    this.longPolling = true;
+    this.poll();
   }
 });
 
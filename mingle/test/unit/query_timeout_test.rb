@@ -0,0 +1,72 @@
+#  Copyright 2020 ThoughtWorks, Inc.
+#  
+#  This program is free software: you can redistribute it and/or modify
+#  it under the terms of the GNU Affero General Public License as
+#  published by the Free Software Foundation, either version 3 of the
+#  License, or (at your option) any later version.
+#  
+#  This program is distributed in the hope that it will be useful,
+#  but WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+#  GNU Affero General Public License for more details.
+#  
+#  You should have received a copy of the GNU Affero General Public License
+#  along with this program.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>.
+
+require File.expand_path(File.dirname(__FILE__) + '/../unit_test_helper')
+
+class QueryTimeoutTest < ActiveSupport::TestCase
+
+  def test_should_set_query_deadline_while_running_the_block
+    QueryTimeout.limit(10) do
+      assert_in_delta now_millis + 10_000, query_deadline, 1000
+    end
+    assert_nil query_deadline
+  end
+
+  def test_nested_limit_should_only_bring_the_deadline_closer
+    QueryTimeout.limit(10) do
+      outer = query_deadline
+      QueryTimeout.limit(100) { assert_equal outer, query_deadline }
+      QueryTimeout.limit(1) { assert query_deadline < outer }
+      assert_equal outer, query_deadline
+    end
+  end
+
+  def test_should_not_set_query_deadline_without_seconds
+    QueryTimeout.limit(0) { assert_nil query_deadline }
+    QueryTimeout.limit(nil) { assert_nil query_deadline }
+  end
+
+  def test_should_restore_query_deadline_when_the_block_raises
+    assert_raise(RuntimeError) do
+      QueryTimeout.limit(10) { raise 'boom' }
+    end
+    assert_nil query_deadline
+  end
+
+  def test_request_seconds_should_default_to_five_minutes
+    MingleConfiguration.overridden_to(:query_timeout => nil) do
+      assert_equal 300, QueryTimeout.request_seconds
+    end
+    MingleConfiguration.overridden_to(:query_timeout => '20') do
+      assert_equal 20, QueryTimeout.request_seconds
+    end
+  end
+
+  def test_background_jobs_should_have_no_deadline_by_default
+    MingleConfiguration.overridden_to(:background_job_query_timeout => nil) do
+      assert_equal 0, QueryTimeout.background_job_seconds
+    end
+  end
+
+  private
+
+  def query_deadline
+    ActiveRecord::Base.connection.raw_connection.query_deadline
+  end
+
+  def now_millis
+    (Time.now.to_f * 1000).to_i
+  end
+end